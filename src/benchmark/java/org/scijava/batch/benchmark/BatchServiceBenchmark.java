@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.benchmark;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.batch.BatchService;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleService;
+import org.scijava.script.ScriptInfo;
+import org.scijava.service.SciJavaService;
+
+/**
+ * Benchmarks input matching and per-file input filling of {@link BatchService}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchServiceBenchmark {
+
+	private static final String SCRIPT = "" //
+		+ "#@ File input\n" //
+		+ "#@ File(style = \"directory\") folder\n" //
+		+ "#@ File(style = \"save\") output\n" //
+		+ "#@ String name\n" //
+		+ "#@ Integer number\n" //
+		+ "#@ Double factor\n" //
+		+ "#@output result\n" //
+		+ "" //
+		+ "result = input";
+
+	private Context context;
+	private BatchService batchService;
+	private ScriptInfo scriptInfo;
+	private Module module;
+	private ModuleItem<?> fileInput;
+	private File file;
+
+	@Setup
+	public void setUp() {
+		context = new Context(SciJavaService.class);
+		batchService = context.service(BatchService.class);
+		scriptInfo = new ScriptInfo(context, "Benchmark.groovy", new StringReader(
+			SCRIPT));
+		module = context.service(ModuleService.class).createModule(scriptInfo);
+		fileInput = scriptInfo.getInput("input");
+		file = new File("file.tif");
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Benchmark
+	public List<ModuleItem<?>> batchableInputs() {
+		return batchService.batchableInputs(scriptInfo);
+	}
+
+	@Benchmark
+	public boolean supportsModule() {
+		return batchService.supportsModule(scriptInfo);
+	}
+
+	@Benchmark
+	public Object fillInput() {
+		batchService.fillInput(module, fileInput, file);
+		return module.getInput("input");
+	}
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.batch.FileFinder;
+
+/**
+ * Benchmarks recursive file discovery with wildcard and regex patterns over a
+ * synthetic directory tree ({@code fanout}^{@code depth} folders with
+ * {@code files} files each, a third of which match).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileDiscoveryBenchmark {
+
+	@Param({ "4" })
+	private int fanout;
+
+	@Param({ "3" })
+	private int depth;
+
+	@Param({ "60" })
+	private int files;
+
+	private Path root;
+
+	@Setup
+	public void setUp() throws IOException {
+		root = Files.createTempDirectory("batch-discovery");
+		createTree(root, depth);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(
+				File::delete);
+		}
+	}
+
+	@Benchmark
+	public long wildcard() throws IOException {
+		return new FileFinder(root.toFile(), FileFinder.createFilter(
+			FileFinder.WILDCARD, "*.tif"), true).count();
+	}
+
+	@Benchmark
+	public long regex() throws IOException {
+		return new FileFinder(root.toFile(), FileFinder.createFilter(
+			FileFinder.REGEX, ".*_[0-9]+\\.tif"), true).count();
+	}
+
+	private void createTree(final Path dir, final int levels) throws IOException {
+		final String[] extensions = { ".tif", ".txt", ".csv" };
+		for (int i = 0; i < files; i++) {
+			Files.createFile(dir.resolve("image_" + i + extensions[i % 3]));
+		}
+		if (levels == 0) return;
+		for (int i = 0; i < fanout; i++) {
+			createTree(Files.createDirectory(dir.resolve("folder" + i)), levels - 1);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.benchmark;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.batch.CachedScriptModule;
+import org.scijava.batch.CompiledScriptCache;
+import org.scijava.batch.ModuleBatchProcessor;
+import org.scijava.command.CommandService;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleService;
+import org.scijava.script.ScriptInfo;
+import org.scijava.service.SciJavaService;
+
+/**
+ * Benchmarks the per-file overhead of batch processing a trivial script, both
+ * for single script runs and for complete {@link ModuleBatchProcessor} runs.
+ * Scores are per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModuleBatchBenchmark {
+
+	private static final int FILES = 1000;
+
+	private static final String SCRIPT = "" //
+		+ "#@ File input\n" //
+		+ "#@output result\n" //
+		+ "" //
+		+ "result = input.getName().length()";
+
+	@Param({ "1", "4" })
+	private int workers;
+
+	private Context context;
+	private ModuleService moduleService;
+	private CommandService commandService;
+	private ScriptInfo scriptInfo;
+	private Module scriptModule;
+	private Module cachedScriptModule;
+	private File[] files;
+
+	@Setup
+	public void setUp() {
+		context = new Context(SciJavaService.class);
+		moduleService = context.service(ModuleService.class);
+		commandService = context.service(CommandService.class);
+		scriptInfo = new ScriptInfo(context, "Benchmark.groovy", new StringReader(
+			SCRIPT));
+		scriptModule = moduleService.createModule(scriptInfo);
+		cachedScriptModule = new CachedScriptModule(scriptInfo,
+			new CompiledScriptCache());
+		context.inject(cachedScriptModule);
+		files = new File[FILES];
+		for (int i = 0; i < FILES; i++) {
+			files[i] = new File("file" + i + ".tif");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+	}
+
+	/** Script evaluation without module processing, re-parsing the script. */
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public Object scriptModule() {
+		return runAll(scriptModule);
+	}
+
+	/** Script evaluation without module processing, compiled once. */
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public Object cachedScriptModule() {
+		return runAll(cachedScriptModule);
+	}
+
+	/** Complete batch run, including module pre- and postprocessing. */
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public Object batchProcessor() throws InterruptedException,
+		ExecutionException
+	{
+		final Map<String, Object> inputs = new HashMap<>();
+		inputs.put("moduleInfo", scriptInfo);
+		inputs.put("inputChoice", "input");
+		inputs.put("inputFileList", files);
+		inputs.put("workers", workers);
+		return commandService.run(ModuleBatchProcessor.class, true, inputs).get()
+			.getOutput("outputTable");
+	}
+
+	private Object runAll(final Module module) {
+		for (final File file : files) {
+			module.setInput("input", file);
+			module.run();
+		}
+		return module.getOutput("result");
+	}
+}
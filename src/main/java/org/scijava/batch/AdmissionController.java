@@ -0,0 +1,220 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Admits batch items for processing only while the projected heap use stays
+ * below a fraction of the maximum heap size.
+ * <p>
+ * The memory needed by an item is estimated as its input size times a ratio
+ * that is learned while the batch runs: after each garbage collection, the
+ * growth of the live heap (relative to when the controller was created) is
+ * divided by the input bytes in flight. The projected heap use is the live
+ * heap after the last collection plus the estimates of all admitted items.
+ * While the JVM spent more than {@value #GC_PRESSURE_LIMIT} of the last second
+ * (or more) in garbage collection, no further items are admitted. An item is
+ * always admitted if no other item is in flight, so that the batch makes
+ * progress.
+ * </p>
+ *
+ * @author agent
+ */
+class AdmissionController {
+
+	/** Ratio of memory use to input size before anything was learned */
+	static final double DEFAULT_RATIO = 2;
+
+	/** Fraction of time spent in GC above which admission is paused */
+	static final double GC_PRESSURE_LIMIT = 0.1;
+
+	/** Weight of a new ratio sample */
+	private static final double SMOOTHING = 0.2;
+
+	private static final long POLL_MS = 50;
+
+	/** Minimum time over which GC pressure is measured */
+	private static final long WINDOW_MS = 1000;
+
+	private final long maxHeap;
+	private final double heapFraction;
+	private final List<MemoryPoolMXBean> heapPools;
+	private final List<GarbageCollectorMXBean> collectors;
+	private final long baseline;
+
+	private double ratio;
+	private int inFlight;
+	private long inFlightBytes;
+	private long reserved;
+	private long lastGcCount;
+	private long lastGcTime;
+	private long lastCheckNanos;
+	private double gcPressure;
+
+	/**
+	 * @param heapFraction the maximum fraction of the heap to use, e.g. 0.8
+	 */
+	AdmissionController(final double heapFraction) {
+		this(Runtime.getRuntime().maxMemory(), heapFraction, DEFAULT_RATIO);
+	}
+
+	AdmissionController(final long maxHeap, final double heapFraction,
+		final double ratio)
+	{
+		this.maxHeap = maxHeap;
+		this.heapFraction = heapFraction;
+		this.ratio = ratio;
+		heapPools = new ArrayList<>(ManagementFactory.getMemoryPoolMXBeans());
+		heapPools.removeIf(pool -> pool.getType() != MemoryType.HEAP);
+		collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		baseline = liveHeap();
+		lastGcCount = gcCount();
+		lastGcTime = gcTime();
+		lastCheckNanos = System.nanoTime();
+	}
+
+	/**
+	 * Wait until an item with the given input size can be admitted.
+	 *
+	 * @return the reserved memory, to be passed to {@link #release}
+	 */
+	synchronized long admit(final long inputBytes)
+		throws InterruptedException
+	{
+		long reservation;
+		while ((reservation = tryAdmit(inputBytes)) < 0) {
+			wait(POLL_MS);
+		}
+		return reservation;
+	}
+
+	/**
+	 * Admit an item with the given input size if possible.
+	 *
+	 * @return the reserved memory, to be passed to {@link #release}, or -1 if
+	 *         the item was not admitted
+	 */
+	synchronized long tryAdmit(final long inputBytes) {
+		update();
+		final long estimate = (long) (inputBytes * ratio);
+		if (inFlight > 0 && (gcPressure > GC_PRESSURE_LIMIT || liveHeap() +
+			reserved + estimate > heapFraction * maxHeap))
+		{
+			return -1;
+		}
+		inFlight++;
+		inFlightBytes += inputBytes;
+		reserved += estimate;
+		return estimate;
+	}
+
+	/** Release an admitted item. */
+	synchronized void release(final long reservation,
+		final long inputBytes)
+	{
+		update();
+		inFlight--;
+		inFlightBytes -= inputBytes;
+		reserved -= reservation;
+		notifyAll();
+	}
+
+	/** Returns the learned ratio of memory use to input size. */
+	synchronized double getRatio() {
+		return ratio;
+	}
+
+	/** Returns the fraction of time recently spent in garbage collection. */
+	synchronized double getGcPressure() {
+		return gcPressure;
+	}
+
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Learn the ratio from garbage collections since the last update, and
+	 * measure GC pressure once per {@link #WINDOW_MS}.
+	 */
+	private void update() {
+		final long gcCount = gcCount();
+		if (gcCount != lastGcCount && inFlightBytes > 0) {
+			final double sample = Math.max(0, liveHeap() - baseline) /
+				(double) inFlightBytes;
+			ratio = (1 - SMOOTHING) * ratio + SMOOTHING * sample;
+		}
+		lastGcCount = gcCount;
+		final long now = System.nanoTime();
+		final double elapsedMs = (now - lastCheckNanos) / 1e6;
+		if (elapsedMs < WINDOW_MS) return;
+		final long gcTime = gcTime();
+		gcPressure = Math.min(1, (gcTime - lastGcTime) / elapsedMs);
+		lastGcTime = gcTime;
+		lastCheckNanos = now;
+	}
+
+	/** Heap use after the last garbage collection, or current use if unknown. */
+	private long liveHeap() {
+		long used = 0;
+		for (final MemoryPoolMXBean pool : heapPools) {
+			MemoryUsage usage = pool.isCollectionUsageThresholdSupported() ? pool
+				.getCollectionUsage() : null;
+			if (usage == null) usage = pool.getUsage();
+			if (usage != null) used += usage.getUsed();
+		}
+		return used;
+	}
+
+	private long gcCount() {
+		long count = 0;
+		for (final GarbageCollectorMXBean collector : collectors) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private long gcTime() {
+		long time = 0;
+		for (final GarbageCollectorMXBean collector : collectors) {
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
+	}
+
+}
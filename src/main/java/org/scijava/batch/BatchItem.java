@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The input files of one module invocation of a batch run (a single file, or
+ * a chunk of files for array inputs), together with their position in the
+ * batch.
+ *
+ * @author agent
+ */
+class BatchItem {
+
+	/** Position of the (first) file in the batch */
+	final long index;
+	/** The (first) file */
+	final File file;
+	/** All files, in batch order */
+	final List<File> files;
+
+	BatchItem(final long index, final File file) {
+		this(index, Collections.singletonList(file));
+	}
+
+	BatchItem(final long index, final List<File> files) {
+		this.index = index;
+		this.file = files.get(0);
+		this.files = files;
+	}
+
+	int size() {
+		return files.size();
+	}
+
+	/** The file, or the range of files of a chunk, for log messages */
+	@Override
+	public String toString() {
+		if (files.size() == 1) return file.toString();
+		return files.size() + " files from " + file + " to " + files.get(files
+			.size() - 1);
+	}
+}
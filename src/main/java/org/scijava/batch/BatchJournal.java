@@ -0,0 +1,227 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of completed batch items, allowing to resume an
+ * interrupted batch run.
+ * <p>
+ * Each record identifies an input file by its absolute path, size and
+ * modification time, together with a hash of the script that processed it,
+ * and holds the outputs of the run encoded with {@link ValueCodec}; outputs
+ * of unsupported types are recorded as skipped and replayed as {@code null}.
+ * Records are length-prefixed and checksummed, so that a record that was only
+ * partially written (e.g. because the application crashed) is ignored when
+ * reading.
+ * </p>
+ *
+ * @author agent
+ */
+public class BatchJournal implements Closeable {
+
+	private static final int MAGIC = 0x534a424a; // "SJBJ"
+	private static final int VERSION = 1;
+
+	private final File file;
+	private final String scriptHash;
+	private final Map<String, Record> records = new HashMap<>();
+	private DataOutputStream out;
+
+	/**
+	 * Opens a journal for writing.
+	 *
+	 * @param file the journal file
+	 * @param scriptHash hash of the script being run (see
+	 *          {@link ContentHash#of(org.scijava.module.ModuleInfo)})
+	 * @param resume if true, existing records are read and new records are
+	 *          appended; otherwise any existing journal is overwritten
+	 */
+	public BatchJournal(final File file, final String scriptHash,
+		final boolean resume) throws IOException
+	{
+		this.file = file;
+		this.scriptHash = scriptHash;
+		if (resume && file.length() > 0) {
+			read();
+		}
+		// NB: reading truncates a journal without a complete header
+		final boolean append = resume && file.length() > 0;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+			file, append)));
+		if (!append) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Returns the journaled outputs for the given input file, if it was
+	 * completed by the same script and did not change since.
+	 *
+	 * @return the outputs, or null if the file needs to be processed
+	 */
+	public Map<String, Object> lookup(final File input) {
+		final Record record;
+		synchronized (records) {
+			record = records.get(input.getAbsolutePath());
+		}
+		if (record == null || !record.scriptHash.equals(scriptHash) ||
+			record.size != input.length() || record.lastModified != input
+				.lastModified())
+		{
+			return null;
+		}
+		return record.outputs;
+	}
+
+	/**
+	 * Appends a record for a completed input file.
+	 */
+	public void record(final File input, final Map<String, Object> outputs)
+		throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream record = new DataOutputStream(bytes);
+		ValueCodec.writeString(record, input.getAbsolutePath());
+		record.writeLong(input.length());
+		record.writeLong(input.lastModified());
+		ValueCodec.writeString(record, scriptHash);
+		record.writeInt(outputs.size());
+		for (final Entry<String, Object> output : outputs.entrySet()) {
+			ValueCodec.writeString(record, output.getKey());
+			ValueCodec.write(record, output.getValue());
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		synchronized (this) {
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+			out.writeLong(crc.getValue());
+			out.flush();
+		}
+	}
+
+	/** Number of records read from an existing journal. */
+	public int size() {
+		synchronized (records) {
+			return records.size();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Reads all complete records, and truncates the journal after the last one.
+	 */
+	private void read() throws IOException {
+		final long length = file.length();
+		long valid = 0;
+		try (final DataInputStream in = new DataInputStream(
+			new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a batch journal: " + file);
+			}
+			valid = 8;
+			while (true) {
+				final int size = in.readInt();
+				if (size < 0 || valid + 12 + size > length) break; // incomplete
+				final byte[] bytes = new byte[size];
+				in.readFully(bytes);
+				final CRC32 crc = new CRC32();
+				crc.update(bytes);
+				if (in.readLong() != crc.getValue()) break; // corrupt record
+				final Record record = readRecord(new DataInputStream(
+					new ByteArrayInputStream(bytes)));
+				records.put(record.path, record);
+				valid += 12 + size;
+			}
+		}
+		catch (final EOFException exc) {
+			// end of journal, possibly with an incomplete last record
+		}
+		if (valid < length) {
+			try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(valid);
+			}
+		}
+	}
+
+	private static Record readRecord(final DataInputStream in)
+		throws IOException
+	{
+		final Record record = new Record();
+		record.path = ValueCodec.readString(in);
+		record.size = in.readLong();
+		record.lastModified = in.readLong();
+		record.scriptHash = ValueCodec.readString(in);
+		final int n = in.readInt();
+		record.outputs = new LinkedHashMap<>(n);
+		for (int i = 0; i < n; i++) {
+			record.outputs.put(ValueCodec.readString(in), ValueCodec.read(in));
+		}
+		return record;
+	}
+
+	private static class Record {
+		private String path;
+		private long size;
+		private long lastModified;
+		private String scriptHash;
+		private Map<String, Object> outputs;
+	}
+}
@@ -0,0 +1,497 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.PatternSyntaxException;
+
+import org.scijava.Context;
+import org.scijava.batch.metrics.BatchMetrics;
+import org.scijava.command.CommandModule;
+import org.scijava.command.CommandService;
+import org.scijava.convert.ConvertService;
+import org.scijava.io.IOService;
+import org.scijava.log.LogService;
+import org.scijava.log.Logger;
+import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleService;
+import org.scijava.script.ScriptInfo;
+import org.scijava.script.ScriptService;
+import org.scijava.service.Service;
+import org.scijava.task.TaskService;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Headless command-line entry point, e.g. for cluster nodes:
+ *
+ * <pre>
+ * java org.scijava.batch.BatchProcessor --script analyze.groovy \
+ *     --input /data --pattern "*.tif" --recursive --workers 8 \
+ *     --output results.csv --param threshold=0.5
+ * </pre>
+ *
+ * Run with {@code --help} for a description of all options. Only the services
+ * needed for batch processing are started, see {@link #SERVICES}. The process
+ * exits with one of the {@code EXIT_*} codes; missing or invalid arguments
+ * print the usage and exit with {@link #EXIT_USAGE}.
+ *
+ * @author agent
+ */
+public final class BatchProcessor {
+
+	/** All files were processed successfully */
+	public static final int EXIT_OK = 0;
+	/** The batch completed, but some files failed */
+	public static final int EXIT_FAILURES = 1;
+	/** Invalid command-line arguments */
+	public static final int EXIT_USAGE = 2;
+	/** The batch could not be started, e.g. unknown script or inputs */
+	public static final int EXIT_SETUP = 3;
+	/** The batch was terminated before all files were processed */
+	public static final int EXIT_INCOMPLETE = 4;
+
+	/** Services of the minimal context created by {@link #main(String...)} */
+	@SuppressWarnings("unchecked")
+	public static final List<Class<? extends Service>> SERVICES = Arrays.asList(
+		BatchService.class, CommandService.class, ConvertService.class,
+		IOService.class, LogService.class, ModuleService.class,
+		ScriptService.class, TaskService.class, ThreadService.class);
+
+	private static final String USAGE = "" //
+		+ "Usage: BatchProcessor --script <file> <inputs> [options]\n" //
+		+ "\n" //
+		+ "Inputs (one of):\n" //
+		+ "  --input <folder>        process matching files in folder\n" //
+		+ "  --files <list>          process the files listed in a text file\n" //
+		+ "  <file>...               process the given files\n" //
+		+ "\n" //
+		+ "Options:\n" //
+		+ "  --pattern <pattern>     file name pattern for --input (default *)\n" //
+		+ "  --regex                 pattern is a regular expression, not a wildcard\n" //
+		+ "  --recursive             include subfolders of --input\n" //
+		+ "  --watch                 keep processing new files written to --input\n" //
+		+ "  --idle-timeout <s>      stop watching after s seconds without new files\n" //
+		+ "  --input-name <name>     script input to batch (if there are several)\n" //
+		+ "  --workers <n>           number of parallel workers (default: #cores)\n" //
+		+ "  --heap-fraction <f>     start files only while the projected heap use\n" //
+		+ "                          stays below this fraction (e.g. 0.8)\n" //
+		+ "  --chunk-size <n>        files per invocation for File[] inputs (default 100)\n" //
+		+ "  --fast                  skip pre- and postprocessing after the first file\n" //
+		+ "  --timeout <seconds>     skip files taking longer (default: no timeout)\n" //
+		+ "  --virtual-threads       run each file on a virtual thread (Java 21+),\n" //
+		+ "                          with at most --workers files at once\n" //
+		+ "  --prefetch <n>          number of files to read ahead (default 0)\n" //
+		+ "  --prefetch-budget <MB>  memory budget for reading ahead (default 256)\n" //
+		+ "  --output <file>         result file (.csv, .tsv or .bcol)\n" //
+		+ "  --output-folder <dir>   save image and other non-scalar outputs here\n" //
+		+ "  --output-pattern <p>    output file names\n" //
+		+ "                          (default {name}_{index}_{output}.tif)\n" //
+		+ "  --cache <folder>        reuse results of unchanged files from this cache\n" //
+		+ "  --cache-size <MB>       maximum size of the result cache (default 1024)\n" //
+		+ "  --journal <file>        journal of completed files\n" //
+		+ "  --resume                skip files completed according to --journal\n" //
+		+ "  --param <name>=<value>  value of another script input (repeatable)\n";
+
+	private BatchProcessor() {
+		// prevent instantiation of utility class
+	}
+
+	public static void main(final String... args) {
+		System.exit(run(args));
+	}
+
+	/**
+	 * Run a batch as described by the command-line arguments, in a headless
+	 * context of the {@link #SERVICES} that is disposed afterwards.
+	 *
+	 * @return one of the {@code EXIT_*} codes
+	 */
+	public static int run(final String... args) {
+		System.setProperty("java.awt.headless", "true");
+		final Context context = new Context(SERVICES);
+		try {
+			return run(context, args);
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	/**
+	 * Run a batch as described by the command-line arguments.
+	 *
+	 * @return one of the {@code EXIT_*} codes
+	 */
+	public static int run(final Context context, final String... args) {
+		final Logger log = context.service(LogService.class);
+		final Options options;
+		try {
+			options = Options.parse(args);
+		}
+		catch (final IllegalArgumentException exc) {
+			return usage(System.err, exc.getMessage());
+		}
+		if (options.help) {
+			return usage(System.out, null);
+		}
+
+		final ScriptInfo script = options.script.isFile() ? context.service(
+			ScriptService.class).getScript(options.script) : null;
+		if (script == null) {
+			log.error("Not a script: " + options.script);
+			return EXIT_SETUP;
+		}
+		final BatchService batchService = context.service(BatchService.class);
+		final List<ModuleItem<?>> batchable = batchService.batchableInputs(script);
+		String inputName = options.inputName;
+		if (inputName == null) {
+			if (batchable.size() != 1) {
+				log.error(batchable.isEmpty() ? "Script has no batchable inputs." :
+					"Script has several batchable inputs, choose one with --input-name.");
+				return EXIT_SETUP;
+			}
+			inputName = batchable.get(0).getName();
+		}
+
+		final FileSource fileSource;
+		try {
+			fileSource = createFileSource(context, options, log);
+		}
+		catch (final IOException | PatternSyntaxException exc) {
+			log.error("Unable to list input files", exc);
+			return EXIT_SETUP;
+		}
+
+		final Map<String, Object> inputMap = new HashMap<>();
+		inputMap.put("moduleInfo", script);
+		inputMap.put("inputChoice", inputName);
+		inputMap.put("inputSource", fileSource);
+		inputMap.put("moduleInputs", options.params);
+		inputMap.put("tableRows", 0);
+		inputMap.put("resultFile", options.output);
+		inputMap.put("outputFolder", options.outputFolder);
+		if (options.outputPattern != null) {
+			inputMap.put("outputPattern", options.outputPattern);
+		}
+		inputMap.put("journalFile", options.journal);
+		inputMap.put("cacheFolder", options.cache);
+		if (options.cacheSize > 0) {
+			inputMap.put("cacheSize", options.cacheSize);
+		}
+		inputMap.put("resume", options.resume);
+		if (options.workers > 0) {
+			inputMap.put("workers", options.workers);
+		}
+		inputMap.put("heapFraction", options.heapFraction);
+		if (options.chunkSize > 0) {
+			inputMap.put("chunkSize", options.chunkSize);
+		}
+		inputMap.put("fastPath", options.fastPath);
+		inputMap.put("timeout", options.timeout);
+		inputMap.put("virtualThreads", options.virtualThreads);
+		inputMap.put("prefetch", options.prefetch);
+		if (options.prefetchBudget > 0) {
+			inputMap.put("prefetchBudget", options.prefetchBudget);
+		}
+
+		final CommandModule module;
+		try {
+			module = context.service(CommandService.class).run(
+				ModuleBatchProcessor.class, true, inputMap).get();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			return EXIT_INCOMPLETE;
+		}
+		catch (final ExecutionException exc) {
+			log.error("Batch failed", exc);
+			return EXIT_SETUP;
+		}
+		finally {
+			try {
+				fileSource.close();
+			}
+			catch (final IOException exc) {
+				log.warn("Unable to close file source", exc);
+			}
+		}
+
+		final BatchMetrics metrics = ((ModuleBatchProcessor<?>) module.getCommand())
+			.getMetrics();
+		if (module.isCanceled() || metrics == null) {
+			return EXIT_SETUP;
+		}
+		if (metrics.getCompleted() < metrics.getTotal()) {
+			return EXIT_INCOMPLETE;
+		}
+		return metrics.getFailed() > 0 ? EXIT_FAILURES : EXIT_OK;
+	}
+
+	// -- Helper methods --
+
+	private static FileSource createFileSource(final Context context,
+		final Options options, final Logger log) throws IOException
+	{
+		if (options.input != null) {
+			if (!options.input.isDirectory()) {
+				throw new IOException("Not a folder: " + options.input);
+			}
+			final FileFinder finder = new FileFinder(options.input, FileFinder
+				.createFilter(options.regex ? FileFinder.REGEX : FileFinder.WILDCARD,
+					options.pattern), options.recursive);
+			final ThreadService threadService = context.service(ThreadService.class);
+			if (options.watch) {
+				return finder.watch(threadService::run,
+					FileFinder.DEFAULT_QUEUE_CAPACITY, FileFinder.DEFAULT_SETTLE_MS,
+					options.idleTimeout * 1000L, log);
+			}
+			return finder.stream(threadService::run,
+				FileFinder.DEFAULT_QUEUE_CAPACITY, log);
+		}
+		final CompactFileList files = CompactFileList.of(options.files);
+		if (options.fileList != null) {
+			try (BufferedReader reader = Files.newBufferedReader(options.fileList
+				.toPath(), StandardCharsets.UTF_8))
+			{
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.trim().isEmpty()) files.add(new File(line.trim()));
+				}
+			}
+		}
+		return files;
+	}
+
+	private static int usage(final PrintStream out, final String error) {
+		if (error != null) out.println("Error: " + error + "\n");
+		out.print(USAGE);
+		return error == null ? EXIT_OK : EXIT_USAGE;
+	}
+
+	/** Parsed command-line arguments */
+	static class Options {
+
+		File script;
+		File input;
+		File fileList;
+		final List<File> files = new ArrayList<>();
+		String pattern = "*";
+		boolean regex;
+		boolean recursive;
+		boolean watch;
+		int idleTimeout;
+		String inputName;
+		int workers;
+		double heapFraction;
+		int chunkSize;
+		boolean fastPath;
+		int timeout;
+		boolean virtualThreads;
+		int prefetch;
+		int prefetchBudget;
+		File output;
+		File outputFolder;
+		String outputPattern;
+		File journal;
+		File cache;
+		int cacheSize;
+		boolean resume;
+		final Map<String, Object> params = new LinkedHashMap<>();
+		boolean help;
+
+		static Options parse(final String... args) {
+			final Options options = new Options();
+			for (int i = 0; i < args.length; i++) {
+				final String arg = args[i];
+				switch (arg) {
+					case "-h":
+					case "--help":
+						options.help = true;
+						return options;
+					case "--script":
+						options.script = new File(value(args, ++i, arg));
+						break;
+					case "--input":
+						options.input = new File(value(args, ++i, arg));
+						break;
+					case "--files":
+						options.fileList = new File(value(args, ++i, arg));
+						break;
+					case "--pattern":
+						options.pattern = value(args, ++i, arg);
+						break;
+					case "--regex":
+						options.regex = true;
+						break;
+					case "--recursive":
+						options.recursive = true;
+						break;
+					case "--watch":
+						options.watch = true;
+						break;
+					case "--idle-timeout":
+						options.idleTimeout = parseInt(value(args, ++i, arg), 0, arg);
+						break;
+					case "--input-name":
+						options.inputName = value(args, ++i, arg);
+						break;
+					case "--workers":
+						options.workers = parseInt(value(args, ++i, arg), 1, arg);
+						break;
+					case "--heap-fraction":
+						options.heapFraction = parseFraction(value(args, ++i, arg), arg);
+						break;
+					case "--chunk-size":
+						options.chunkSize = parseInt(value(args, ++i, arg), 1, arg);
+						break;
+					case "--fast":
+						options.fastPath = true;
+						break;
+					case "--timeout":
+						options.timeout = parseInt(value(args, ++i, arg), 0, arg);
+						break;
+					case "--virtual-threads":
+						options.virtualThreads = true;
+						break;
+					case "--prefetch":
+						options.prefetch = parseInt(value(args, ++i, arg), 0, arg);
+						break;
+					case "--prefetch-budget":
+						options.prefetchBudget = parseInt(value(args, ++i, arg), 1, arg);
+						break;
+					case "--output":
+						options.output = new File(value(args, ++i, arg));
+						break;
+					case "--output-folder":
+						options.outputFolder = new File(value(args, ++i, arg));
+						break;
+					case "--output-pattern":
+						options.outputPattern = value(args, ++i, arg);
+						break;
+					case "--journal":
+						options.journal = new File(value(args, ++i, arg));
+						break;
+					case "--cache":
+						options.cache = new File(value(args, ++i, arg));
+						break;
+					case "--cache-size":
+						options.cacheSize = parseInt(value(args, ++i, arg), 1, arg);
+						break;
+					case "--resume":
+						options.resume = true;
+						break;
+					case "--param":
+						final String param = value(args, ++i, arg);
+						final int eq = param.indexOf('=');
+						if (eq <= 0) {
+							throw new IllegalArgumentException("Expected name=value: " + param);
+						}
+						options.params.put(param.substring(0, eq), param.substring(eq + 1));
+						break;
+					default:
+						if (arg.startsWith("--")) {
+							throw new IllegalArgumentException("Unknown option: " + arg);
+						}
+						options.files.add(new File(arg));
+				}
+			}
+			if (options.script == null) {
+				throw new IllegalArgumentException("No script given");
+			}
+			else if (options.input != null && (options.fileList != null ||
+				!options.files.isEmpty()))
+			{
+				throw new IllegalArgumentException(
+					"Use either --input, --files or a list of files");
+			}
+			else if (options.input == null && options.fileList == null &&
+				options.files.isEmpty())
+			{
+				throw new IllegalArgumentException("No input files given");
+			}
+			else if (options.watch && options.input == null) {
+				throw new IllegalArgumentException("--watch requires --input");
+			}
+			else if (options.resume && options.journal == null) {
+				throw new IllegalArgumentException("--resume requires --journal");
+			}
+			return options;
+		}
+
+		private static String value(final String[] args, final int i,
+			final String option)
+		{
+			if (i >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+			return args[i];
+		}
+
+		private static double parseFraction(final String value,
+			final String option)
+		{
+			try {
+				final double fraction = Double.parseDouble(value);
+				if (fraction > 0 && fraction <= 1) return fraction;
+			}
+			catch (final NumberFormatException exc) {
+				// handled below
+			}
+			throw new IllegalArgumentException("Invalid value for " + option + ": " +
+				value);
+		}
+
+		private static int parseInt(final String value, final int min,
+			final String option)
+		{
+			try {
+				final int number = Integer.parseInt(value);
+				if (number >= min) return number;
+			}
+			catch (final NumberFormatException exc) {
+				// handled below
+			}
+			throw new IllegalArgumentException("Invalid value for " + option + ": " +
+				value);
+		}
+	}
+
+}
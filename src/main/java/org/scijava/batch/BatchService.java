@@ -28,22 +28,31 @@
  */
 package org.scijava.batch;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import org.scijava.batch.input.BatchInput;
 import org.scijava.batch.input.BatchInputProvider;
+import org.scijava.batch.input.InputFiller;
+import org.scijava.batch.output.ResultSink;
+import org.scijava.batch.output.ResultSinkFactory;
 import org.scijava.module.Module;
 import org.scijava.module.ModuleInfo;
 import org.scijava.module.ModuleItem;
 import org.scijava.plugin.HandlerService;
+import org.scijava.script.ScriptInfo;
+import org.scijava.script.ScriptService;
 import org.scijava.service.SciJavaService;
 
 public interface BatchService extends HandlerService<BatchInput, BatchInputProvider<?>>, SciJavaService {
 	/**
 	 * Returns true if {@code moduleInfo} has at least one input item whose type
-	 * is supported by this service
+	 * is supported by this service. Implementations may cache the result per
+	 * module, see {@link #batchableInputs(ModuleInfo)}.
 	 */
 	default public boolean supportsModule(ModuleInfo moduleInfo) {
 		for (ModuleItem<?> input : moduleInfo.inputs()) {
@@ -68,7 +77,9 @@ public interface BatchService extends HandlerService<BatchInput, BatchInputProvi
 
 	/**
 	 * A collection of input {@link ModuleItem}s of the given {@link ModuleInfo}
-	 * that are supported (i.e. can be batch-processed) by this service
+	 * that are supported (i.e. can be batch-processed) by this service.
+	 * Implementations may cache the result per module until the module is
+	 * added, removed or updated in the {@code ModuleService}.
 	 */
 	default public List<ModuleItem<?>> batchableInputs(ModuleInfo moduleInfo) {
 		return StreamSupport.stream(moduleInfo.inputs().spliterator(), false)
@@ -76,10 +87,40 @@ public interface BatchService extends HandlerService<BatchInput, BatchInputProvi
 				.collect(Collectors.toList());
 	}
 	
+	/**
+	 * Get all scripts known to the {@link ScriptService} that have batchable
+	 * inputs, sorted by menu path. The list is computed in parallel on first
+	 * access and cached until modules are added, removed or updated, so callers
+	 * should invoke this off the event dispatch thread.
+	 *
+	 * @param listener notified of each batchable script as it is found, from
+	 *          worker threads, while the list is being computed; may be null
+	 */
+	public List<ScriptInfo> batchableScripts(Consumer<ScriptInfo> listener);
+
 	/**
 	 * Fill a provided ModuleItem with a given input object
 	 * @param <I>
 	 */
 	public <I> void fillInput(Module module, ModuleItem<?> moduleItem, I inputObject);
 
+	/**
+	 * Get an {@link InputFiller} that populates {@code moduleItem} with objects
+	 * of the given source type. Use this instead of
+	 * {@link #fillInput(Module, ModuleItem, Object)} when filling the same
+	 * input repeatedly.
+	 *
+	 * @return the input filler, or null if no handler supports the item
+	 */
+	public <I> InputFiller<I> getInputFiller(ModuleItem<?> moduleItem, Class<I> sourceType);
+
+	/**
+	 * Create a {@link ResultSink} writing batch results to the given file, using
+	 * the first {@link ResultSinkFactory} that supports the file (usually by its
+	 * extension).
+	 *
+	 * @return the sink, or null if the file format is not supported
+	 */
+	public ResultSink createResultSink(File file) throws IOException;
+
 }
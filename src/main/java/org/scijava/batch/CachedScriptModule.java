@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import javax.script.ScriptEngine;
+
+import org.scijava.script.ScriptInfo;
+import org.scijava.script.ScriptModule;
+
+/**
+ * A {@link ScriptModule} that compiles its script once and only evaluates the
+ * compiled script on subsequent runs.
+ *
+ * @author agent
+ * @see CompiledScriptCache
+ */
+public class CachedScriptModule extends ScriptModule {
+
+	private final CompiledScriptCache cache;
+	private ScriptEngine engine;
+
+	public CachedScriptModule(final ScriptInfo info,
+		final CompiledScriptCache cache)
+	{
+		super(info);
+		this.cache = cache;
+	}
+
+	// -- ScriptModule methods --
+
+	@Override
+	public ScriptEngine getEngine() {
+		if (engine == null) {
+			final ScriptInfo info = getInfo();
+			final String language = getLanguage() == null ? null : getLanguage()
+				.getLanguageName();
+			engine = new CompilingScriptEngine(super.getEngine(), cache, info
+				.getPath(), language);
+		}
+		return engine;
+	}
+}
@@ -0,0 +1,214 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, append-only list of input files.
+ * <p>
+ * Each distinct parent directory is stored once; file names are stored as
+ * length-prefixed UTF-8 bytes in large shared pages. An entry costs an
+ * {@code int} directory index, a {@code long} name position and the name
+ * bytes, instead of a {@link File} and its path {@link String}. {@link File}
+ * objects are only created on access.
+ * </p>
+ * <p>
+ * Adding files is not thread-safe; a list that is no longer modified can be
+ * read from multiple threads.
+ * </p>
+ *
+ * @author agent
+ */
+public class CompactFileList implements FileSource {
+
+	private static final int PAGE_SIZE = 1 << 20;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final List<String> dirs = new ArrayList<>();
+	private final Map<String, Integer> dirIndex = new HashMap<>();
+	private final List<byte[]> pages = new ArrayList<>();
+
+	private int[] entryDirs = new int[INITIAL_CAPACITY];
+	private long[] entryNames = new long[INITIAL_CAPACITY];
+	private int size;
+
+	private byte[] page;
+	private int pageFill = PAGE_SIZE;
+	private String lastDir;
+	private int lastDirId = -1;
+
+	/**
+	 * Returns a list containing the given files.
+	 */
+	public static CompactFileList of(final Iterable<File> files) {
+		final CompactFileList list = new CompactFileList();
+		for (final File file : files) {
+			list.add(file);
+		}
+		return list;
+	}
+
+	/**
+	 * Appends a file to the list.
+	 */
+	public void add(final File file) {
+		final String parent = file.getParent();
+		final byte[] name = file.getName().getBytes(StandardCharsets.UTF_8);
+		if (size == entryDirs.length) {
+			final int capacity = size + (size >> 1);
+			entryDirs = Arrays.copyOf(entryDirs, capacity);
+			entryNames = Arrays.copyOf(entryNames, capacity);
+		}
+		entryDirs[size] = dirId(parent);
+		entryNames[size] = writeName(name);
+		size++;
+	}
+
+	/**
+	 * Returns the file at the given index.
+	 *
+	 * @throws IndexOutOfBoundsException if the index is not in the list
+	 */
+	public File get(final long index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " +
+				size);
+		}
+		final int i = (int) index;
+		final String dir = entryDirs[i] < 0 ? null : dirs.get(entryDirs[i]);
+		return new File(dir, readName(entryNames[i]));
+	}
+
+	/**
+	 * Approximate number of bytes used by the list.
+	 */
+	public long memoryUsage() {
+		long bytes = 12L * entryDirs.length + (long) pages.size() * PAGE_SIZE;
+		for (final String dir : dirs) {
+			bytes += 2L * dir.length() + 64;
+		}
+		return bytes;
+	}
+
+	// -- FileSource methods --
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public boolean isComplete() {
+		return true;
+	}
+
+	// -- Iterable methods --
+
+	@Override
+	public Iterator<File> iterator() {
+		return new Iterator<File>() {
+
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public File next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return get(next++);
+			}
+		};
+	}
+
+	// -- Helper methods --
+
+	private int dirId(final String dir) {
+		if (dir == null) return -1;
+		// files are usually added directory by directory
+		if (dir.equals(lastDir)) return lastDirId;
+		Integer id = dirIndex.get(dir);
+		if (id == null) {
+			id = dirs.size();
+			dirs.add(dir);
+			dirIndex.put(dir, id);
+		}
+		lastDir = dir;
+		lastDirId = id;
+		return id;
+	}
+
+	/**
+	 * Writes a name with a variable-length size prefix to the current page.
+	 * Names never span pages.
+	 *
+	 * @return the position of the name
+	 */
+	private long writeName(final byte[] name) {
+		final int length = 5 + name.length;
+		if (pageFill + length > PAGE_SIZE) {
+			page = new byte[Math.max(PAGE_SIZE, length)];
+			pages.add(page);
+			pageFill = 0;
+		}
+		final long position = (long) (pages.size() - 1) * PAGE_SIZE + pageFill;
+		int value = name.length;
+		while ((value & ~0x7f) != 0) {
+			page[pageFill++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		page[pageFill++] = (byte) value;
+		System.arraycopy(name, 0, page, pageFill, name.length);
+		pageFill += name.length;
+		return position;
+	}
+
+	private String readName(final long position) {
+		final byte[] bytes = pages.get((int) (position / PAGE_SIZE));
+		int offset = (int) (position % PAGE_SIZE);
+		int length = 0;
+		for (int shift = 0;; shift += 7) {
+			final byte b = bytes[offset++];
+			length |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) break;
+		}
+		return new String(bytes, offset, length, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * Cache of compiled scripts for the duration of a batch run.
+ * <p>
+ * Scripts are keyed by script path, content hash and language. For script
+ * engines that declare themselves thread-safe (a {@code THREADING} engine
+ * parameter of {@code MULTITHREADED}, {@code THREAD-ISOLATED} or
+ * {@code STATELESS}), a single {@link CompiledScript} is shared by all
+ * workers; for all other engines, each engine compiles its own copy once.
+ * </p>
+ * <p>
+ * Sharing is safe since a shared script is always evaluated with the
+ * {@link javax.script.ScriptContext} of the evaluating module's own engine
+ * (see {@link CompilingScriptEngine}), so modules never share bindings, and
+ * these engines allow the compiled code itself to be evaluated by several
+ * threads at once.
+ * </p>
+ *
+ * @author agent
+ */
+public class CompiledScriptCache {
+
+	private final ConcurrentMap<Key, CompiledScript> sharedScripts =
+		new ConcurrentHashMap<>();
+
+	/**
+	 * Compiles {@code source} for use with {@code engine}, or returns a
+	 * previously compiled script if it can be shared with this engine.
+	 *
+	 * @return the compiled script, or {@code null} if the engine does not
+	 *         support compilation
+	 */
+	public CompiledScript compile(final String path, final String language,
+		final String source, final ScriptEngine engine) throws ScriptException
+	{
+		if (!(engine instanceof Compilable)) return null;
+		if (!isThreadSafe(engine)) {
+			return ((Compilable) engine).compile(source);
+		}
+		final Key key = new Key(path, ContentHash.of(source), language);
+		CompiledScript compiled = sharedScripts.get(key);
+		if (compiled == null) {
+			compiled = ((Compilable) engine).compile(source);
+			final CompiledScript previous = sharedScripts.putIfAbsent(key, compiled);
+			if (previous != null) compiled = previous;
+		}
+		return compiled;
+	}
+
+	/** Number of compiled scripts shared between engines. */
+	public int size() {
+		return sharedScripts.size();
+	}
+
+	// -- Helper methods --
+
+	private static boolean isThreadSafe(final ScriptEngine engine) {
+		if (engine.getFactory() == null) return false;
+		final Object threading = engine.getFactory().getParameter("THREADING");
+		return "MULTITHREADED".equals(threading) || "THREAD-ISOLATED".equals(
+			threading) || "STATELESS".equals(threading);
+	}
+
+	private static class Key {
+		private final String path;
+		private final String hash;
+		private final String language;
+
+		private Key(final String path, final String hash, final String language) {
+			this.path = path;
+			this.hash = hash;
+			this.language = language;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return Objects.equals(path, other.path) && hash.equals(other.hash) &&
+				Objects.equals(language, other.language);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, hash, language);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+
+/**
+ * {@link ScriptEngine} wrapper that compiles a script on its first evaluation,
+ * and evaluates the compiled script whenever the same source is evaluated
+ * again.
+ * <p>
+ * Any other source (and any engine that is not
+ * {@link javax.script.Compilable}) is passed on to the wrapped engine
+ * unchanged.
+ * </p>
+ *
+ * @author agent
+ */
+class CompilingScriptEngine implements ScriptEngine {
+
+	private final ScriptEngine delegate;
+	private final CompiledScriptCache cache;
+	private final String path;
+	private final String language;
+
+	private String source;
+	private CompiledScript compiled;
+	private boolean compilable = true;
+
+	CompilingScriptEngine(final ScriptEngine delegate,
+		final CompiledScriptCache cache, final String path, final String language)
+	{
+		this.delegate = delegate;
+		this.cache = cache;
+		this.path = path;
+		this.language = language;
+	}
+
+	// -- ScriptEngine methods --
+
+	@Override
+	public Object eval(final String script, final ScriptContext context)
+		throws ScriptException
+	{
+		final CompiledScript c = compiled(script);
+		return c == null ? delegate.eval(script, context) : c.eval(context);
+	}
+
+	@Override
+	public Object eval(final Reader reader, final ScriptContext context)
+		throws ScriptException
+	{
+		return eval(read(reader), context);
+	}
+
+	@Override
+	public Object eval(final String script) throws ScriptException {
+		return eval(script, delegate.getContext());
+	}
+
+	@Override
+	public Object eval(final Reader reader) throws ScriptException {
+		return eval(read(reader), delegate.getContext());
+	}
+
+	@Override
+	public Object eval(final String script, final Bindings n)
+		throws ScriptException
+	{
+		return delegate.eval(script, n);
+	}
+
+	@Override
+	public Object eval(final Reader reader, final Bindings n)
+		throws ScriptException
+	{
+		return delegate.eval(reader, n);
+	}
+
+	@Override
+	public void put(final String key, final Object value) {
+		delegate.put(key, value);
+	}
+
+	@Override
+	public Object get(final String key) {
+		return delegate.get(key);
+	}
+
+	@Override
+	public Bindings getBindings(final int scope) {
+		return delegate.getBindings(scope);
+	}
+
+	@Override
+	public void setBindings(final Bindings bindings, final int scope) {
+		delegate.setBindings(bindings, scope);
+	}
+
+	@Override
+	public Bindings createBindings() {
+		return delegate.createBindings();
+	}
+
+	@Override
+	public ScriptContext getContext() {
+		return delegate.getContext();
+	}
+
+	@Override
+	public void setContext(final ScriptContext context) {
+		delegate.setContext(context);
+	}
+
+	@Override
+	public ScriptEngineFactory getFactory() {
+		return delegate.getFactory();
+	}
+
+	// -- Helper methods --
+
+	private CompiledScript compiled(final String script) throws ScriptException {
+		if (!compilable) return null;
+		if (compiled != null && script.equals(source)) return compiled;
+		compiled = cache.compile(path, language, script, delegate);
+		source = script;
+		compilable = compiled != null;
+		return compiled;
+	}
+
+	private static String read(final Reader reader) throws ScriptException {
+		final StringBuilder sb = new StringBuilder();
+		final char[] buffer = new char[8192];
+		try (final Reader r = reader) {
+			int n;
+			while ((n = r.read(buffer)) != -1) {
+				sb.append(buffer, 0, n);
+			}
+		}
+		catch (final IOException exc) {
+			throw new ScriptException(exc);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.scijava.module.ModuleInfo;
+import org.scijava.script.ScriptInfo;
+
+/**
+ * Utility methods for computing SHA-256 content hashes.
+ *
+ * @author agent
+ */
+public final class ContentHash {
+
+	private ContentHash() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Returns a new SHA-256 message digest.
+	 */
+	public static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (final NoSuchAlgorithmException exc) {
+			// NB: every Java platform is required to support SHA-256
+			throw new IllegalStateException(exc);
+		}
+	}
+
+	/**
+	 * Returns the hex-encoded SHA-256 hash of the given string.
+	 */
+	public static String of(final String text) {
+		return toHex(digest().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Returns a hash identifying the code that is run by a module. For scripts,
+	 * this is the hash of the script content; for other modules, the hash of
+	 * their identifier and version.
+	 */
+	public static String of(final ModuleInfo info) throws IOException {
+		if (info instanceof ScriptInfo) {
+			final ScriptInfo script = (ScriptInfo) info;
+			try (final BufferedReader reader = script.getReader()) {
+				if (reader != null) return of(read(reader));
+			}
+			if (script.getPath() != null) {
+				return toHex(digest().digest(Files.readAllBytes(Paths.get(script
+					.getPath()))));
+			}
+		}
+		return of(info.getIdentifier() + ":" + info.getVersion());
+	}
+
+	/**
+	 * Returns the hex-encoded SHA-256 hash of the content of the given file.
+	 */
+	public static String of(final File file) throws IOException {
+		final MessageDigest digest = digest();
+		final byte[] buffer = new byte[65536];
+		try (final InputStream in = new FileInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the lowercase hex representation of the given bytes.
+	 */
+	public static String toHex(final byte[] bytes) {
+		final char[] digits = "0123456789abcdef".toCharArray();
+		final char[] hex = new char[2 * bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+			hex[2 * i + 1] = digits[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	// -- Helper methods --
+
+	private static String read(final Reader reader) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		final char[] buffer = new char[8192];
+		int n;
+		while ((n = reader.read(buffer)) != -1) {
+			sb.append(buffer, 0, n);
+		}
+		return sb.toString();
+	}
+}
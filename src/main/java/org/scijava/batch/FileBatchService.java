@@ -29,19 +29,41 @@
 package org.scijava.batch;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.scijava.Priority;
 import org.scijava.batch.input.BatchInput;
 import org.scijava.batch.input.BatchInputProvider;
+import org.scijava.batch.input.InputFiller;
+import org.scijava.batch.output.ResultSink;
+import org.scijava.batch.output.ResultSinkFactory;
 import org.scijava.command.CommandService;
+import org.scijava.event.EventHandler;
 import org.scijava.log.LogService;
 import org.scijava.module.Module;
 import org.scijava.module.ModuleInfo;
 import org.scijava.module.ModuleItem;
+import org.scijava.module.event.ModulesAddedEvent;
+import org.scijava.module.event.ModulesRemovedEvent;
+import org.scijava.module.event.ModulesUpdatedEvent;
 import org.scijava.plugin.AbstractHandlerService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginService;
+import org.scijava.script.ScriptInfo;
+import org.scijava.script.ScriptService;
 import org.scijava.service.Service;
 
 @Plugin(type = Service.class, priority = Priority.LOW)
@@ -53,27 +75,141 @@ public final class FileBatchService extends AbstractHandlerService<BatchInput, B
 	@Parameter
 	private CommandService commandService;
 
+	@Parameter
+	private PluginService pluginService;
+
+	@Parameter(required = false)
+	private ScriptService scriptService;
+
+	/**
+	 * Handlers resolved per module item and source type. Module items are weakly
+	 * referenced, so that items of discarded modules do not pile up.
+	 */
+	private final Map<ModuleItem<?>, Map<Type, Resolution>> resolutions = Collections
+			.synchronizedMap(new WeakHashMap<>());
+
 	/**
-	 * Returns true if {@code type} is a {@link File}.
+	 * Names of the batchable inputs per module. Only names are stored, as module
+	 * items reference their module info, which would keep the weak keys alive.
 	 */
+	private final Map<ModuleInfo, List<String>> batchableIndex = Collections
+			.synchronizedMap(new WeakHashMap<>());
+
+	/** Sorted batchable scripts, or null until computed. */
+	private volatile List<ScriptInfo> batchableScripts;
+
+	/** Incremented whenever scripts change, to discard stale computations. */
+	private final AtomicInteger scriptsGeneration = new AtomicInteger();
+
+	private final Object scriptsLock = new Object();
+
+	// -- Event handlers --
+
+	@EventHandler
+	protected void onEvent(final ModulesAddedEvent event) {
+		invalidate(event.getItems(), false);
+	}
+
+	@EventHandler
+	protected void onEvent(final ModulesRemovedEvent event) {
+		invalidate(event.getItems(), true);
+	}
+
+	@EventHandler
+	protected void onEvent(final ModulesUpdatedEvent event) {
+		invalidate(event.getItems(), true);
+	}
+
+	// -- BatchService methods --
+
 	@Override
-	public boolean supportsItem(ModuleItem<?> moduleItem) {
-		BatchInputProvider<?> handler = getHandler(new BatchInput(File.class, moduleItem));
-		if (handler == null) {
-			return false;
+	public boolean supportsModule(ModuleInfo moduleInfo) {
+		return !batchableNames(moduleInfo).isEmpty();
+	}
+
+	@Override
+	public List<ModuleItem<?>> batchableInputs(ModuleInfo moduleInfo) {
+		List<String> names = batchableNames(moduleInfo);
+		List<ModuleItem<?>> inputs = new ArrayList<>(names.size());
+		for (String name : names) {
+			ModuleItem<?> input = moduleInfo.getInput(name);
+			if (input != null) {
+				inputs.add(input);
+			}
+		}
+		return inputs;
+	}
+
+	@Override
+	public List<ScriptInfo> batchableScripts(Consumer<ScriptInfo> listener) {
+		List<ScriptInfo> scripts = batchableScripts;
+		if (scripts != null) {
+			return scripts;
+		}
+		synchronized (scriptsLock) {
+			scripts = batchableScripts;
+			if (scripts == null) {
+				if (scriptService == null) {
+					return Collections.emptyList();
+				}
+				// script discovery registers modules, so take the generation after it
+				List<ScriptInfo> allScripts = scriptService.getScripts();
+				int generation = scriptsGeneration.get();
+				scripts = Collections.unmodifiableList(allScripts.parallelStream()
+						.filter(script -> {
+							if (!supportsModule(script)) return false;
+							if (listener != null) listener.accept(script);
+							return true;
+						})
+						.sorted(Comparator.comparing(script -> script.getMenuPath().getMenuString()))
+						.collect(Collectors.toList()));
+				if (scriptsGeneration.get() == generation) {
+					batchableScripts = scripts;
+				}
+			}
+			return scripts;
 		}
-		return handler.canProvide(moduleItem);
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Returns true if {@code type} is a {@link File}, or a {@code File[]} or
+	 * {@code List<File>} that can be filled with chunks of files (provided as
+	 * {@link List}).
+	 */
+	@Override
+	public boolean supportsItem(ModuleItem<?> moduleItem) {
+		return resolve(moduleItem, File.class).supported || resolve(moduleItem, List.class).supported;
+	}
+
 	@Override
 	public <I> void fillInput(Module module, ModuleItem<?> moduleItem, I inputObject) {
-		BatchInputProvider<File> handler = (BatchInputProvider<File>) getHandler(new BatchInput(File.class, moduleItem));
-		if (handler == null) {
+		@SuppressWarnings("unchecked")
+		InputFiller<I> filler = (InputFiller<I>) getInputFiller(moduleItem, File.class);
+		if (filler == null) {
 			log.error("No handler found for input: " + moduleItem.getName());
 			return;
 		}
-		handler.populateInput(module, moduleItem, (File) inputObject);
+		filler.fill(module, inputObject);
+	}
+
+	@Override
+	public <I> InputFiller<I> getInputFiller(ModuleItem<?> moduleItem, Class<I> sourceType) {
+		@SuppressWarnings("unchecked")
+		BatchInputProvider<I> handler = (BatchInputProvider<I>) resolve(moduleItem, sourceType).handler;
+		if (handler == null) {
+			return null;
+		}
+		return (module, inputObject) -> handler.populateInput(module, moduleItem, inputObject);
+	}
+
+	@Override
+	public ResultSink createResultSink(File file) throws IOException {
+		for (ResultSinkFactory factory : pluginService.createInstancesOfType(ResultSinkFactory.class)) {
+			if (factory.supports(file)) {
+				return factory.createSink(file);
+			}
+		}
+		return null;
 	}
 
 	@Override
@@ -98,6 +234,75 @@ public final class FileBatchService extends AbstractHandlerService<BatchInput, B
 		commandService.run(ModuleBatchProcessor.class, true, inputMap);
 	}
 
+	// -- Helper methods --
+
+	/**
+	 * Find the handler for the given module item and source type, or look it up
+	 * from the cache.
+	 */
+	private Resolution resolve(ModuleItem<?> moduleItem, Type sourceType) {
+		Map<Type, Resolution> byType = resolutions.computeIfAbsent(moduleItem,
+				item -> new ConcurrentHashMap<>());
+		return byType.computeIfAbsent(sourceType, type -> {
+			BatchInputProvider<?> handler = getHandler(new BatchInput(type, moduleItem));
+			return new Resolution(handler, handler != null && handler.canProvide(moduleItem));
+		});
+	}
+
+	/**
+	 * Get the names of the batchable inputs of a module from the index, computing
+	 * them on first access.
+	 */
+	private List<String> batchableNames(ModuleInfo moduleInfo) {
+		List<String> names = batchableIndex.get(moduleInfo);
+		if (names == null) {
+			names = new ArrayList<>();
+			for (ModuleItem<?> input : moduleInfo.inputs()) {
+				if (supportsItem(input)) {
+					names.add(input.getName());
+				}
+			}
+			names = names.isEmpty() ? Collections.emptyList() : Collections
+					.unmodifiableList(names);
+			batchableIndex.put(moduleInfo, names);
+		}
+		return names;
+	}
+
+	/**
+	 * Drop index entries and resolved handlers of changed modules, so they are
+	 * recomputed on next access. Newly added modules have no resolved handlers
+	 * yet, so their inputs are only visited if {@code resolved} is set; this
+	 * avoids initializing every script that gets registered.
+	 */
+	private void invalidate(List<? extends ModuleInfo> moduleInfos,
+		boolean resolved)
+	{
+		for (ModuleInfo moduleInfo : moduleInfos) {
+			batchableIndex.remove(moduleInfo);
+			if (moduleInfo instanceof ScriptInfo) {
+				scriptsGeneration.incrementAndGet();
+				batchableScripts = null;
+			}
+			if (!resolved || resolutions.isEmpty()) {
+				continue;
+			}
+			for (ModuleItem<?> input : moduleInfo.inputs()) {
+				resolutions.remove(input);
+			}
+		}
+	}
+
+	private static class Resolution {
+		private final BatchInputProvider<?> handler;
+		private final boolean supported;
+
+		private Resolution(BatchInputProvider<?> handler, boolean supported) {
+			this.handler = handler;
+			this.supported = supported;
+		}
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public Class<BatchInputProvider<?>> getPluginType() {
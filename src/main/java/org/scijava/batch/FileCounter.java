@@ -0,0 +1,192 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.regex.PatternSyntaxException;
+
+import org.scijava.thread.ThreadService;
+
+/**
+ * Counts matching files for the folder dialogs in the background.
+ * <p>
+ * The listing of a folder (tree) is cached, so that pattern changes only
+ * re-filter the cached names in memory. A change of the folder or of the
+ * recursive option starts a new listing and stops the previous one; each
+ * update stops the previous count. {@link #update} waits a short time for the
+ * result, so that the dialog can show it right away when it is available;
+ * otherwise the result of the latest update is passed to a listener once it
+ * is known.
+ * </p>
+ *
+ * @author agent
+ */
+class FileCounter {
+
+	/** Time to wait for the count before reporting progress. */
+	static final long WAIT_MS = 250;
+
+	private final ThreadService threadService;
+
+	private File folder;
+	private boolean recursive;
+	private Future<CompactFileList> listing;
+	private AtomicBoolean listingStopped = new AtomicBoolean();
+	private AtomicBoolean countStopped = new AtomicBoolean();
+
+	FileCounter(final ThreadService threadService) {
+		this.threadService = threadService;
+	}
+
+	/**
+	 * Counts the files matching the given pattern in the background.
+	 *
+	 * @return a message with the count, or a progress message if counting
+	 *         takes longer than {@link #WAIT_MS}
+	 */
+	String update(final File folder, final boolean recursive,
+		final String method, final String pattern)
+	{
+		return update(folder, recursive, method, pattern, message -> {});
+	}
+
+	/**
+	 * Counts the files matching the given pattern in the background.
+	 *
+	 * @param listener receives the message with the count if it was not known
+	 *          within {@link #WAIT_MS}, unless another update was made since
+	 * @return a message with the count, or a progress message if counting
+	 *         takes longer than {@link #WAIT_MS}
+	 */
+	synchronized String update(final File folder, final boolean recursive,
+		final String method, final String pattern,
+		final Consumer<String> listener)
+	{
+		final PathMatcher matcher;
+		try {
+			matcher = FileFinder.createFilter(method, pattern);
+		}
+		catch (final PatternSyntaxException e) {
+			return "Syntax error in pattern.";
+		}
+		if (listing == null || !folder.equals(this.folder) ||
+			recursive != this.recursive)
+		{
+			listingStopped.set(true);
+			final AtomicBoolean stopped = new AtomicBoolean();
+			listingStopped = stopped;
+			this.folder = folder;
+			this.recursive = recursive;
+			listing = threadService.run(() -> new FileFinder(folder, path -> true,
+				recursive).collect(stopped::get, null));
+		}
+		countStopped.set(true);
+		final AtomicBoolean stopped = new AtomicBoolean();
+		countStopped = stopped;
+		// whoever sets this first leaves the result to the other: the count
+		// passes it to the listener if this method returned without it
+		final AtomicBoolean handedOver = new AtomicBoolean();
+		final Future<CompactFileList> files = listing;
+		final Future<String> count = threadService.run(() -> {
+			final String message = count(files, matcher, stopped);
+			if (!handedOver.compareAndSet(false, true) && message != null &&
+				!stopped.get())
+			{
+				listener.accept(message);
+			}
+			return message;
+		});
+		try {
+			String message;
+			try {
+				message = count.get(WAIT_MS, TimeUnit.MILLISECONDS);
+			}
+			catch (final TimeoutException e) {
+				if (handedOver.compareAndSet(false, true)) return "Counting files...";
+				// the count completed in the meantime, without passing it on
+				message = count.get();
+			}
+			return message == null ? "Counting files..." : message;
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return "Counting files...";
+		}
+		catch (final ExecutionException e) {
+			return "Error counting files: " + e.getCause();
+		}
+	}
+
+	/** Stops any running listing and count. */
+	synchronized void close() {
+		listingStopped.set(true);
+		countStopped.set(true);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Counts the listed files that match.
+	 *
+	 * @return the message to show, or null if the count was stopped
+	 */
+	private String count(final Future<CompactFileList> files,
+		final PathMatcher matcher, final AtomicBoolean stopped)
+		throws InterruptedException
+	{
+		long n = 0;
+		try {
+			for (final File file : files.get()) {
+				if (stopped.get()) return null;
+				if (matcher.matches(Paths.get(file.getName()))) n++;
+			}
+		}
+		catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				synchronized (this) {
+					// list again on the next update
+					if (listing == files) listing = null;
+				}
+				return "Error listing files: " + cause.getMessage();
+			}
+			return "Error counting files: " + cause;
+		}
+		return "Found " + n + " files.";
+	}
+}
@@ -0,0 +1,396 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.PatternSyntaxException;
+
+import org.scijava.log.Logger;
+
+/**
+ * Discovers files matching a file name pattern in a folder (and optionally
+ * its subfolders), using NIO file tree walks of depth one per folder.
+ * <p>
+ * Each directory is listed once, reading the attributes of each entry only
+ * once. Subfolders are listed in parallel on a shared pool of daemon
+ * threads, at most {@value #LOOKAHEAD} sibling folders ahead of
+ * the folder whose files are being reported. Matching entries of a directory
+ * are reported after those of its subdirectories, in the same order as a
+ * sequential walk.
+ * </p>
+ * <p>
+ * Sources created by {@link #stream} and {@link #watch} skip unreadable
+ * subfolders with a warning; the other methods fail if any folder can not be
+ * listed.
+ * </p>
+ *
+ * @author agent
+ */
+public class FileFinder {
+
+	public static final String WILDCARD = "Wildcard";
+	public static final String REGEX = "Regex";
+
+	/** Default capacity of the queue between discovery and processing */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/** Default time (in ms) a watched file has to keep its size */
+	public static final long DEFAULT_SETTLE_MS = 1000;
+
+	/** Maximum number of sibling folders listed ahead of the reported one */
+	static final int LOOKAHEAD = 16;
+
+	/** Lists directories; sized for blocking I/O rather than computation. */
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(
+		Math.max(4, Runtime.getRuntime().availableProcessors()), runnable -> {
+			final Thread thread = new Thread(runnable, "FileFinder");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+	private final File folder;
+	private final PathMatcher matcher;
+	private final boolean recursive;
+
+	public FileFinder(final File folder, final PathMatcher matcher,
+		final boolean recursive)
+	{
+		this.folder = folder;
+		this.matcher = matcher;
+		this.recursive = recursive;
+	}
+
+	/**
+	 * Creates a file name matcher for the given selection method. The matcher
+	 * is applied to file names only, not to their paths.
+	 *
+	 * @param method either {@link #WILDCARD} (a glob pattern) or {@link #REGEX}
+	 * @throws PatternSyntaxException if the pattern is invalid
+	 */
+	public static PathMatcher createFilter(final String method,
+		final String pattern)
+	{
+		switch (method) {
+			case WILDCARD:
+				return FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+			case REGEX:
+			default:
+				return FileSystems.getDefault().getPathMatcher("regex:" + pattern);
+		}
+	}
+
+	/**
+	 * Counts all matching files.
+	 */
+	public long count() throws IOException {
+		final AtomicLong count = new AtomicLong();
+		walk(folder.toPath(), file -> {
+			count.incrementAndGet();
+			return true;
+		}, null);
+		return count.get();
+	}
+
+	/**
+	 * Returns a list of all matching files.
+	 */
+	public List<File> list() throws IOException {
+		final List<File> list = new ArrayList<>();
+		walk(folder.toPath(), list::add, null);
+		return list;
+	}
+
+	/**
+	 * Returns a {@link CompactFileList} of all matching files, for listings too
+	 * large to be held as {@link File} objects.
+	 */
+	public CompactFileList collect() throws IOException {
+		return collect(() -> false, null);
+	}
+
+	/**
+	 * Returns a {@link CompactFileList} of the matching files, stopping early
+	 * once {@code stopped} returns true.
+	 *
+	 * @param log reports unreadable subfolders, which are skipped; null to fail
+	 *          instead
+	 */
+	CompactFileList collect(final BooleanSupplier stopped, final Logger log)
+		throws IOException
+	{
+		final CompactFileList list = new CompactFileList();
+		walk(folder.toPath(), file -> {
+			if (stopped.getAsBoolean()) return false;
+			list.add(file);
+			return true;
+		}, log);
+		return list;
+	}
+
+	/**
+	 * Returns a source that discovers matching files in the background once
+	 * iteration begins, and delivers them as they are found.
+	 *
+	 * @param executor runs the discovery
+	 * @param capacity the maximum number of files discovered ahead of
+	 *          processing
+	 * @param log reports discovery errors and skipped subfolders
+	 */
+	public FileSource stream(final Executor executor, final int capacity,
+		final Logger log)
+	{
+		return new QueueFileSource(capacity, executor, source -> {
+			try {
+				walk(folder.toPath(), file -> {
+					try {
+						return source.put(file);
+					}
+					catch (final InterruptedException exc) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}, log);
+			}
+			catch (final IOException | UncheckedIOException exc) {
+				log.error("Error while listing files in " + folder, exc);
+			}
+			finally {
+				source.finish();
+			}
+		});
+	}
+
+	/**
+	 * Returns a source that delivers the matching files in the folder and then
+	 * watches the folder for new ones, see {@link FolderWatcher}.
+	 *
+	 * @param executor runs the watcher
+	 * @param capacity the maximum number of files queued ahead of processing
+	 * @param settleMs time (in ms) a file's size has to stay constant before
+	 *          it is considered fully written
+	 * @param idleMs stop watching after this time (in ms) without new files;
+	 *          0 to watch until the source is closed
+	 * @param log reports watch errors and skipped subfolders
+	 */
+	public FileSource watch(final Executor executor, final int capacity,
+		final long settleMs, final long idleMs, final Logger log)
+	{
+		return new QueueFileSource(capacity, executor, source -> {
+			try {
+				new FolderWatcher(this, source, settleMs, idleMs, log).run();
+			}
+			catch (final IOException | UncheckedIOException exc) {
+				log.error("Error while watching " + folder, exc);
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				source.finish();
+			}
+		});
+	}
+
+	File getFolder() {
+		return folder;
+	}
+
+	boolean isRecursive() {
+		return recursive;
+	}
+
+	/** Returns true if the given file name matches. */
+	boolean matches(final Path name) {
+		return matcher.matches(name);
+	}
+
+	// -- Helper methods --
+
+	@FunctionalInterface
+	private interface Visitor {
+
+		/** @return false to stop discovery */
+		boolean visit(File file);
+	}
+
+	/**
+	 * Lists the given folder tree on the pool and reports matching files in
+	 * order, while the next subfolders are still being listed.
+	 *
+	 * @param log reports unreadable subfolders, which are skipped; null to fail
+	 *          instead
+	 */
+	private void walk(final Path root, final Visitor visitor, final Logger log)
+		throws IOException
+	{
+		final AtomicBoolean stopped = new AtomicBoolean();
+		final Listing listing = new Listing(root, stopped);
+		POOL.execute(listing);
+		try {
+			report(listing, visitor, log);
+		}
+		catch (final UncheckedIOException exc) {
+			throw exc.getCause();
+		}
+		finally {
+			// listings still pending return without listing
+			stopped.set(true);
+		}
+	}
+
+	/**
+	 * Reports the files of an (already started) listing, starting the listings
+	 * of its subfolders {@value #LOOKAHEAD} ahead of the one being reported.
+	 *
+	 * @return false if discovery was stopped by the visitor, or interrupted
+	 */
+	private boolean report(final Listing listing, final Visitor visitor,
+		final Logger log)
+	{
+		try {
+			listing.done.await();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		if (listing.error != null) {
+			if (log == null || !listing.subfolder) {
+				throw new UncheckedIOException(listing.error);
+			}
+			log.warn("Skipping unreadable folder " + listing.dir, listing.error);
+			return true;
+		}
+		final List<Listing> subdirs = listing.subdirs;
+		for (int i = 0; i < Math.min(LOOKAHEAD, subdirs.size()); i++) {
+			POOL.execute(subdirs.get(i));
+		}
+		for (int i = 0; i < subdirs.size(); i++) {
+			if (i + LOOKAHEAD < subdirs.size()) {
+				POOL.execute(subdirs.get(i + LOOKAHEAD));
+			}
+			if (!report(subdirs.get(i), visitor, log)) return false;
+		}
+		final File dirFile = listing.dir.toFile();
+		for (final String name : listing.matches) {
+			if (!visitor.visit(new File(dirFile, name))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Lists a single directory. The listings of its subdirectories are created,
+	 * but only started by {@link #report}.
+	 */
+	private class Listing extends SimpleFileVisitor<Path> implements Runnable {
+
+		private final Path dir;
+		private final boolean subfolder;
+		private final AtomicBoolean stopped;
+		private final List<Listing> subdirs = new ArrayList<>();
+		private final List<String> matches = new ArrayList<>();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private IOException error;
+
+		private Listing(final Path dir, final AtomicBoolean stopped) {
+			this(dir, false, stopped);
+		}
+
+		private Listing(final Path dir, final boolean subfolder,
+			final AtomicBoolean stopped)
+		{
+			this.dir = dir;
+			this.subfolder = subfolder;
+			this.stopped = stopped;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (stopped.get()) return;
+				// NB: entries are visited with the attributes read by the walk
+				Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1,
+					this);
+			}
+			catch (final IOException exc) {
+				error = exc;
+			}
+			finally {
+				done.countDown();
+			}
+		}
+
+		@Override
+		public FileVisitResult visitFile(final Path entry,
+			final BasicFileAttributes attrs)
+		{
+			return add(entry, attrs.isDirectory());
+		}
+
+		@Override
+		public FileVisitResult visitFileFailed(final Path entry,
+			final IOException exc) throws IOException
+		{
+			// the folder itself can not be listed
+			if (entry.equals(dir)) throw exc;
+			// NB: an entry without attributes is not a folder, but may match
+			return add(entry, false);
+		}
+
+		private FileVisitResult add(final Path entry, final boolean isDirectory) {
+			if (stopped.get()) return FileVisitResult.TERMINATE;
+			final Path name = entry.getFileName();
+			if (recursive && isDirectory) {
+				subdirs.add(new Listing(entry, true, stopped));
+			}
+			if (matcher.matches(name)) matches.add(name.toString());
+			return FileVisitResult.CONTINUE;
+		}
+	}
+}
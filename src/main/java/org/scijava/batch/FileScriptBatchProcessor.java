@@ -29,30 +29,28 @@
 package org.scijava.batch;
 
 import java.io.File;
-import java.io.FilenameFilter;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.regex.PatternSyntaxException;
 
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
-import org.apache.commons.io.filefilter.RegexFileFilter;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.scijava.ItemVisibility;
 import org.scijava.command.Command;
 import org.scijava.command.CommandService;
 import org.scijava.command.DynamicCommand;
 import org.scijava.convert.ConvertService;
+import org.scijava.event.EventHandler;
+import org.scijava.log.Logger;
 import org.scijava.module.ModuleInfo;
 import org.scijava.module.ModuleItem;
+import org.scijava.module.event.ModuleCanceledEvent;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.script.ScriptService;
+import org.scijava.thread.ThreadService;
 import org.scijava.widget.ChoiceWidget;
 import org.scijava.widget.FileWidget;
 
 @Plugin(type = Command.class, label = "Process Folder", menuPath = "Process>Batch>Run Script from File")
-public class FileScriptBatchProcessor extends DynamicCommand {
+public class FileScriptBatchProcessor extends DynamicCommand implements FileCountDialog {
 
 	private final String WILDCARD = "Wildcard";
 	private final String REGEX = "Regex";
@@ -66,6 +64,12 @@ public class FileScriptBatchProcessor extends DynamicCommand {
 	@Parameter
 	private ConvertService convert;
 
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private Logger log;
+
 	@Parameter(label = "Script file to run", callback = "scriptFileCallback")
 	private File scriptFile;
 	
@@ -87,46 +91,57 @@ public class FileScriptBatchProcessor extends DynamicCommand {
 	@Parameter(visibility = ItemVisibility.MESSAGE, persist = false)
 	private String message = " "; // Placeholder message
 
-//	@Parameter(label = "Output directory", style = FileWidget.DIRECTORY_STYLE, required = false)
-//	private File outputFolder;
+	@Parameter(label = "Watch folder for new files")
+	private boolean continuous;
+
+	@Parameter(label = "Stop watching after idle time (s, 0 = never)", min = "0")
+	private int idleTimeout = 0;
+
+	private FileCounter fileCounter;
+	private Runnable refresher = () -> {};
+
+	@Parameter(label = "Output directory", style = FileWidget.DIRECTORY_STYLE, required = false)
+	private File outputFolder;
 
-	private List<File> fileList;
 	private ModuleInfo moduleInfo;
 
 	@Override
 	public void run() {
-		// Get list of files from input folder
-		if (fileList == null) {
-			directoryCallback();
-		}
-		
+		if (fileCounter != null) fileCounter.close();
 		if (moduleInfo == null) {
 			scriptFileCallback();
 		}
 
+		// Discover files from input folder while the batch is running
+		FileSource fileSource;
+		try {
+			fileSource = continuous ? createFinder().watch(threadService::run,
+				FileFinder.DEFAULT_QUEUE_CAPACITY, FileFinder.DEFAULT_SETTLE_MS,
+				idleTimeout * 1000L, log) : createFinder().stream(threadService::run,
+					FileFinder.DEFAULT_QUEUE_CAPACITY, log);
+		} catch (PatternSyntaxException e) {
+			log.error("Syntax error in regex: " + pattern, e);
+			return;
+		}
+
 		HashMap<String, Object> inputMap = new HashMap<>();
 		inputMap.put("moduleInfo", moduleInfo);
-		File[] fileArray = fileList.toArray(new File[fileList.size()]);
-		inputMap.put("inputFileList", fileArray);
-//		inputMap.put("outputFolder", outputFolder);
+		inputMap.put("inputSource", fileSource);
+		inputMap.put("outputFolder", outputFolder);
+		if (continuous) {
+			// keep only the most recent results of a batch without end
+			inputMap.put("tableRows", ModuleBatchProcessor.WATCH_TABLE_ROWS);
+		}
 		commands.run(ModuleBatchProcessor.class, true, inputMap);
 	}
 
 	// -- Helper methods --
 
-	private List<File> populateFileList(File folder, FilenameFilter filter, boolean rec) {
-		List<File> list = new ArrayList<>();
-		if (rec) {
-			for (File file : folder.listFiles((FilenameFilter) DirectoryFileFilter.DIRECTORY)) {
-				list.addAll(populateFileList(file, filter, rec));
-			}
-		}
-		for (File file : folder.listFiles(filter)) {
-			list.add(file);
-		}
-		return list;
+	private FileFinder createFinder() {
+		return new FileFinder(inputFolder, FileFinder.createFilter(filterChoice,
+			pattern), recursive);
 	}
-	
+
 	// -- Callback methods --
 	
 	/**
@@ -135,25 +150,29 @@ public class FileScriptBatchProcessor extends DynamicCommand {
 	protected void directoryCallback() {
 		if (inputFolder == null || !inputFolder.exists()) return;
 
-		// get list of all applicable files
-		FilenameFilter inputFilter;
-		try {
-			switch (filterChoice) {
-			case WILDCARD:
-				inputFilter = new WildcardFileFilter(pattern);
-				break;
-			case REGEX:
-			default:
-				inputFilter = new RegexFileFilter(pattern);
-				break;
-			}
-			fileList = populateFileList(inputFolder, inputFilter, recursive);
-		} catch (PatternSyntaxException e) {
-			fileList = null;
-			message = "Syntax error in regex.";
-		}
-		if (fileList != null) {
-			message = "Found " + fileList.size() + " files.";
+		// count all applicable files in the background
+		if (fileCounter == null) fileCounter = new FileCounter(threadService);
+		message = fileCounter.update(inputFolder, recursive, filterChoice,
+			pattern, count -> threadService.queue(() -> {
+				message = count;
+				refresher.run();
+			}));
+	}
+
+	// -- FileCountDialog methods --
+
+	@Override
+	public void setRefresher(final Runnable refresher) {
+		this.refresher = refresher;
+	}
+
+	// -- Event handlers --
+
+	/** Stops counting when the dialog is canceled. */
+	@EventHandler
+	protected void onEvent(final ModuleCanceledEvent event) {
+		if (event.getModule().getDelegateObject() == this && fileCounter != null) {
+			fileCounter.close();
 		}
 	}
 
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A sequence of input files for a batch run, which might still be in the
+ * process of being discovered while the batch is running.
+ *
+ * @author agent
+ */
+public interface FileSource extends Iterable<File>, Closeable {
+
+	/**
+	 * Number of files discovered so far.
+	 */
+	long size();
+
+	/**
+	 * Returns true if all files have been discovered, i.e. if {@link #size()}
+	 * will not change anymore.
+	 */
+	boolean isComplete();
+
+	/**
+	 * Stops discovering further files. Iteration still delivers the files
+	 * that were discovered so far (i.e. counted by {@link #size()}) and then
+	 * ends, without waiting for discovery.
+	 */
+	@Override
+	default void close() {
+		// nothing to release
+	}
+
+	/**
+	 * Returns a (complete) source for the given array of files.
+	 */
+	static FileSource of(final File... files) {
+		return new FileSource() {
+
+			@Override
+			public Iterator<File> iterator() {
+				return Arrays.asList(files).iterator();
+			}
+
+			@Override
+			public long size() {
+				return files.length;
+			}
+
+			@Override
+			public boolean isComplete() {
+				return true;
+			}
+		};
+	}
+}
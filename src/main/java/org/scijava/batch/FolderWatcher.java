@@ -0,0 +1,263 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.scijava.log.Logger;
+
+/**
+ * Feeds a {@link QueueFileSource} with the files of a folder that match a
+ * {@link FileFinder}, first with those already present and then with new
+ * ones as they appear, using a {@link WatchService}.
+ * <p>
+ * A file is delivered once its size and modification time have not changed
+ * for the settle time, i.e. when it has been fully written. Each file is
+ * delivered once; delivered files that have since been deleted are forgotten
+ * from time to time, to keep memory bounded while watching. An overflow of watch events triggers a rescan of the
+ * folder. When watching stops after the idle time, a final scan picks up
+ * files whose events were missed. Unreadable subfolders are skipped with a
+ * warning.
+ * </p>
+ *
+ * @author agent
+ */
+class FolderWatcher {
+
+	/** Number of delivered files remembered before pruning */
+	static final int MIN_PRUNE_SIZE = 1024;
+
+	private final FileFinder finder;
+	private final QueueFileSource source;
+	private final long settleMs;
+	private final long idleMs;
+	private final long pollMs;
+	private final Logger log;
+
+	private final Map<WatchKey, Path> dirs = new HashMap<>();
+	private final Map<Path, Pending> pending = new LinkedHashMap<>();
+	private final Set<Path> seen = new HashSet<>();
+	/** Size of {@link #seen} at which deleted files are forgotten */
+	private int pruneSize = MIN_PRUNE_SIZE;
+
+	/** Size of a file as last observed, and since when. */
+	private static class Pending {
+
+		private long size = -1;
+		private long modified = -1;
+		private long since;
+	}
+
+	FolderWatcher(final FileFinder finder, final QueueFileSource source,
+		final long settleMs, final long idleMs, final Logger log)
+	{
+		this.finder = finder;
+		this.source = source;
+		this.settleMs = settleMs;
+		this.idleMs = idleMs;
+		pollMs = Math.max(10, Math.min(100, settleMs / 4));
+		this.log = log;
+	}
+
+	void run() throws IOException, InterruptedException {
+		try (WatchService watcher = finder.getFolder().toPath().getFileSystem()
+			.newWatchService())
+		{
+			register(watcher, finder.getFolder().toPath());
+			scan();
+			long lastActivity = System.currentTimeMillis();
+			while (!source.isClosed()) {
+				WatchKey key = watcher.poll(pollMs, TimeUnit.MILLISECONDS);
+				boolean overflow = false;
+				while (key != null) {
+					overflow |= handle(watcher, key);
+					lastActivity = System.currentTimeMillis();
+					key = watcher.poll();
+				}
+				if (overflow) scan();
+				if (!pending.isEmpty()) {
+					deliver();
+					lastActivity = System.currentTimeMillis();
+				}
+				else if (idleMs > 0 && System.currentTimeMillis() -
+					lastActivity >= idleMs)
+				{
+					break;
+				}
+			}
+			// pick up files whose events were missed
+			scan();
+			while (!pending.isEmpty() && !source.isClosed()) {
+				deliver();
+				if (!pending.isEmpty()) Thread.sleep(pollMs);
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Watches the given folder (and its subfolders, if recursive).
+	 */
+	private void register(final WatchService watcher, final Path dir)
+		throws IOException
+	{
+		dirs.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+			StandardWatchEventKinds.ENTRY_MODIFY), dir);
+		if (!finder.isRecursive()) return;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir,
+			Files::isDirectory))
+		{
+			for (final Path subdir : entries) {
+				registerSubfolder(watcher, subdir);
+			}
+		}
+	}
+
+	/**
+	 * Watches the given subfolder, skipping it with a warning if it can't be
+	 * read.
+	 */
+	private void registerSubfolder(final WatchService watcher, final Path dir) {
+		try {
+			register(watcher, dir);
+		}
+		catch (final IOException exc) {
+			log.warn("Skipping unreadable folder " + dir, exc);
+		}
+	}
+
+	/**
+	 * @return true if events were lost
+	 */
+	private boolean handle(final WatchService watcher, final WatchKey key)
+		throws IOException
+	{
+		final Path dir = dirs.get(key);
+		boolean overflow = false;
+		for (final WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflow = true;
+				continue;
+			}
+			final Path entry = dir.resolve((Path) event.context());
+			if (finder.isRecursive() && event
+				.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(
+					entry))
+			{
+				// files might have been created before the folder was registered
+				registerSubfolder(watcher, entry);
+				overflow = true;
+			}
+			else {
+				add(entry);
+			}
+		}
+		if (!key.reset()) dirs.remove(key);
+		return overflow;
+	}
+
+	/** Adds all matching files that have not been seen yet. */
+	private void scan() throws IOException {
+		for (final File file : finder.collect(source::isClosed, log)) {
+			add(file.toPath());
+		}
+	}
+
+	private void add(final Path file) {
+		if (seen.contains(file) || pending.containsKey(file)) return;
+		if (!finder.matches(file.getFileName())) return;
+		pending.put(file, new Pending());
+	}
+
+	/**
+	 * Delivers the pending files that have settled.
+	 */
+	private void deliver() throws IOException, InterruptedException {
+		final long now = System.currentTimeMillis();
+		final Iterator<Map.Entry<Path, Pending>> entries = pending.entrySet()
+			.iterator();
+		while (entries.hasNext()) {
+			final Map.Entry<Path, Pending> entry = entries.next();
+			final Pending file = entry.getValue();
+			final BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(entry.getKey(),
+					BasicFileAttributes.class);
+			}
+			catch (final NoSuchFileException exc) {
+				// deleted before it settled
+				entries.remove();
+				continue;
+			}
+			if (!attributes.isRegularFile()) {
+				entries.remove();
+				continue;
+			}
+			final long modified = attributes.lastModifiedTime().toMillis();
+			if (attributes.size() != file.size || modified != file.modified) {
+				file.size = attributes.size();
+				file.modified = modified;
+				file.since = now;
+			}
+			else if (now - file.since >= settleMs) {
+				entries.remove();
+				seen.add(entry.getKey());
+				if (seen.size() >= pruneSize) prune();
+				if (!source.put(entry.getKey().toFile())) return;
+			}
+		}
+	}
+
+	/**
+	 * Forgets delivered files that no longer exist. If most files still exist,
+	 * the next pruning happens only after the number of files has doubled.
+	 */
+	private void prune() {
+		seen.removeIf(file -> !Files.exists(file));
+		pruneSize = Math.max(MIN_PRUNE_SIZE, 2 * seen.size());
+	}
+}
@@ -29,27 +29,25 @@
 package org.scijava.batch;
 
 import java.io.File;
-import java.io.FilenameFilter;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.regex.PatternSyntaxException;
 
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
-import org.apache.commons.io.filefilter.RegexFileFilter;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.scijava.ItemVisibility;
 import org.scijava.command.Command;
 import org.scijava.command.CommandService;
 import org.scijava.command.DynamicCommand;
+import org.scijava.event.EventHandler;
+import org.scijava.log.Logger;
+import org.scijava.module.event.ModuleCanceledEvent;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.script.ScriptInfo;
+import org.scijava.thread.ThreadService;
 import org.scijava.widget.ChoiceWidget;
 import org.scijava.widget.FileWidget;
 
 @Plugin(type = Command.class, label = "Process Folder", menuPath = "Process>Batch>Run Script from Menu")
-public class MenuScriptBatchProcessor extends DynamicCommand {
+public class MenuScriptBatchProcessor extends DynamicCommand implements FileCountDialog {
 
 	private final String WILDCARD = "Wildcard";
 	private final String REGEX = "Regex";
@@ -57,6 +55,12 @@ public class MenuScriptBatchProcessor extends DynamicCommand {
 	@Parameter
 	private CommandService commands;
 
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private Logger log;
+
 	@Parameter(label = "Script to run", style = "java.io.File")
 	private ScriptInfo scriptInfo; // ScriptInfoWidget
 
@@ -75,36 +79,37 @@ public class MenuScriptBatchProcessor extends DynamicCommand {
 	@Parameter(visibility = ItemVisibility.MESSAGE, persist = false)
 	private String message = " "; // Placeholder message
 
-//	@Parameter(label = "Output directory", style = FileWidget.DIRECTORY_STYLE, required = false)
-//	private File outputFolder;
+	private FileCounter fileCounter;
+	private Runnable refresher = () -> {};
 
-	private List<File> fileList;
+	@Parameter(label = "Output directory", style = FileWidget.DIRECTORY_STYLE, required = false)
+	private File outputFolder;
 
 	@Override
 	public void run() {
+		if (fileCounter != null) fileCounter.close();
+		// Discover files from input folder while the batch is running
+		FileSource fileSource;
+		try {
+			fileSource = createFinder().stream(threadService::run,
+				FileFinder.DEFAULT_QUEUE_CAPACITY, log);
+		} catch (PatternSyntaxException e) {
+			log.error("Syntax error in regex: " + pattern, e);
+			return;
+		}
+
 		HashMap<String, Object> inputMap = new HashMap<>();
 		inputMap.put("moduleInfo", scriptInfo);
-		File[] fileArray = fileList.toArray(new File[fileList.size()]);
-		inputMap.put("inputFileList", fileArray);
-//		inputMap.put("outputFolder", outputFolder);
+		inputMap.put("inputSource", fileSource);
+		inputMap.put("outputFolder", outputFolder);
 		commands.run(ModuleBatchProcessor.class, true, inputMap);
 	}
 
 	// -- Helper methods --
 
-	private List<File> populateFileList(File folder, FilenameFilter filter,
-			boolean rec) {
-		List<File> list = new ArrayList<>();
-		if (rec) {
-			for (File file : folder
-					.listFiles((FilenameFilter) DirectoryFileFilter.DIRECTORY)) {
-				list.addAll(populateFileList(file, filter, rec));
-			}
-		}
-		for (File file : folder.listFiles(filter)) {
-			list.add(file);
-		}
-		return list;
+	private FileFinder createFinder() {
+		return new FileFinder(inputFolder, FileFinder.createFilter(filterChoice,
+			pattern), recursive);
 	}
 
 	// -- Callback methods --
@@ -115,25 +120,29 @@ public class MenuScriptBatchProcessor extends DynamicCommand {
 	protected void directoryCallback() {
 		if (inputFolder == null || !inputFolder.exists()) return;
 
-		// get list of all applicable files
-		FilenameFilter inputFilter;
-		try {
-			switch (filterChoice) {
-			case WILDCARD:
-				inputFilter = new WildcardFileFilter(pattern);
-				break;
-			case REGEX:
-			default:
-				inputFilter = new RegexFileFilter(pattern);
-				break;
-			}
-			fileList = populateFileList(inputFolder, inputFilter, recursive);
-		} catch (PatternSyntaxException e) {
-			fileList = null;
-			message = "Syntax error in regex.";
-		}
-		if (fileList != null) {
-			message = "Found " + fileList.size() + " files.";
+		// count all applicable files in the background
+		if (fileCounter == null) fileCounter = new FileCounter(threadService);
+		message = fileCounter.update(inputFolder, recursive, filterChoice,
+			pattern, count -> threadService.queue(() -> {
+				message = count;
+				refresher.run();
+			}));
+	}
+
+	// -- FileCountDialog methods --
+
+	@Override
+	public void setRefresher(final Runnable refresher) {
+		this.refresher = refresher;
+	}
+
+	// -- Event handlers --
+
+	/** Stops counting when the dialog is canceled. */
+	@EventHandler
+	protected void onEvent(final ModuleCanceledEvent event) {
+		if (event.getModule().getDelegateObject() == this && fileCounter != null) {
+			fileCounter.close();
 		}
 	}
 }
@@ -28,34 +28,103 @@
  */
 package org.scijava.batch;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import javax.management.JMException;
+
+import org.scijava.Context;
 import org.scijava.ItemIO;
+import org.scijava.ItemVisibility;
+import org.scijava.batch.input.InputFiller;
+import org.scijava.batch.metrics.BatchMetrics;
+import org.scijava.batch.output.ResultSink;
+import org.scijava.batch.output.TableResultSink;
 import org.scijava.command.Command;
 import org.scijava.command.DynamicCommand;
+import org.scijava.convert.ConvertService;
+import org.scijava.io.IOService;
 import org.scijava.log.Logger;
 import org.scijava.module.Module;
 import org.scijava.module.ModuleInfo;
 import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleRunner;
 import org.scijava.module.MutableModuleItem;
+import org.scijava.module.process.AbstractPreprocessorPlugin;
+import org.scijava.module.process.PostprocessorPlugin;
+import org.scijava.module.process.PreprocessorPlugin;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
-import org.scijava.table.Column;
-import org.scijava.table.DefaultGenericTable;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.PluginService;
+import org.scijava.script.ScriptInfo;
+import org.scijava.service.Service;
 import org.scijava.table.Table;
 import org.scijava.task.Task;
 import org.scijava.task.TaskService;
-//import org.scijava.widget.FileWidget;
+import org.scijava.thread.ThreadService;
+import org.scijava.widget.FileWidget;
+import org.scijava.widget.InputHarvester;
 
-@Plugin(type = Command.class, label = "Choose batch processing parameters", initializer = "initInputChoice")
+@Plugin(type = Command.class, label = "Choose batch processing parameters", initializer = "initInputs")
 public class ModuleBatchProcessor<T> extends DynamicCommand {
+
+	/** Interval of the metrics summary shown as task status */
+	public static final long STATUS_INTERVAL_MS = 1000;
+
+	/** Result column added when a {@link #timeout} is set */
+	public static final String STATUS_COLUMN = "Batch status";
+	public static final String STATUS_OK = "ok";
+	public static final String STATUS_FAILED = "failed";
+	public static final String STATUS_TIMED_OUT = "timed out";
+	public static final String STATUS_CANCELED = "canceled";
+
+	/** Rows kept in the result table of a batch without end, e.g. when watching */
+	public static final int WATCH_TABLE_ROWS = 1000;
+
+	/** Writer threads saving outputs to the {@link #outputFolder} */
+	private static final int OUTPUT_WRITERS = 2;
+	/** Minimum number of outputs waiting to be saved before workers block */
+	private static final int OUTPUT_QUEUE_CAPACITY = 16;
+
+	/** What to do after processing a file */
+	private enum Outcome {
+		/** continue with the next file */
+		NEXT,
+		/** continue, but with a new module, as the old one may still be running */
+		REPLACE_MODULE,
+		/** terminate the batch */
+		STOP
+	}
+
 	@Parameter
 	private BatchService batchService;
 
@@ -68,11 +137,88 @@ public class ModuleBatchProcessor<T> extends DynamicCommand {
 	@Parameter(label = "Which input parameter to batch?", persist = false)
 	private String inputChoice;
 
-	@Parameter(label = "Input files")
+	@Parameter(label = "Input files", required = false)
 	private File[] inputFileList;
 
-//	@Parameter(label = "Output directory", style = FileWidget.DIRECTORY_STYLE, required = false)
-//	private File outputFolder;
+	/**
+	 * Alternative to {@link #inputFileList} for files that are discovered
+	 * while the batch is running, or for large lists held in a
+	 * {@link CompactFileList}
+	 */
+	@Parameter(required = false, persist = false, visibility = ItemVisibility.INVISIBLE)
+	private FileSource inputSource;
+
+	/**
+	 * Values for other inputs of the batched module, e.g. when running
+	 * headless. Values are converted to the input types; inputs given here are
+	 * not harvested.
+	 */
+	@Parameter(required = false, persist = false, visibility = ItemVisibility.INVISIBLE)
+	private Map<String, Object> moduleInputs;
+
+	@Parameter(label = "Number of parallel workers", min = "1")
+	private int workers = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * If positive, files are only started while the projected heap use stays
+	 * below this fraction of the maximum heap, see {@link AdmissionController}.
+	 */
+	@Parameter(label = "Max. heap fraction for starting files (0 = no limit)", min = "0", max = "1", stepSize = "0.05")
+	private double heapFraction = 0;
+
+	@Parameter(label = "Files per invocation (for array inputs)", min = "1")
+	private int chunkSize = 100;
+
+	/**
+	 * Run the full pre- and postprocessing chain (harvesting, initializers,
+	 * validation, display, ...) only until the first file succeeded, then only
+	 * the module itself and the preprocessors that run before input harvesting,
+	 * see {@link #fastPathPreprocessors()}.
+	 */
+	@Parameter(label = "Skip pre- and postprocessing after the first file")
+	private boolean fastPath;
+
+	@Parameter(label = "Timeout per file in seconds (0 = none)", min = "0")
+	private int timeout = 0;
+
+	@Parameter(label = "Run each file on a virtual thread (Java 21+)",
+			description = "For I/O-bound modules: the number of workers then limits how many files are processed at once")
+	private boolean virtualThreads;
+
+	@Parameter(label = "Files to read ahead (0 = off)", min = "0")
+	private int prefetch = 0;
+
+	@Parameter(label = "Read-ahead memory budget (MB)", min = "1")
+	private int prefetchBudget = 256;
+
+	/**
+	 * Folder to save non-scalar outputs (e.g. images) to, see
+	 * {@link OutputWriter}. The results contain their paths instead; outputs
+	 * that can't be saved stay in the results.
+	 */
+	@Parameter(label = "Output directory", style = FileWidget.DIRECTORY_STYLE, required = false)
+	private File outputFolder;
+
+	@Parameter(label = "Output file name pattern", required = false)
+	private String outputPattern = OutputWriter.DEFAULT_PATTERN;
+
+	@Parameter(label = "Journal file (to resume interrupted runs)", style = FileWidget.SAVE_STYLE, required = false)
+	private File journalFile;
+
+	@Parameter(label = "Resume from journal (skip completed files)")
+	private boolean resume;
+
+	@Parameter(label = "Result cache folder (reuse results of unchanged files)", style = FileWidget.DIRECTORY_STYLE, required = false)
+	private File cacheFolder;
+
+	@Parameter(label = "Result cache size (MB)", min = "1")
+	private int cacheSize = 1024;
+
+	@Parameter(label = "Save results to (.csv, .tsv, .bcol)", style = FileWidget.SAVE_STYLE, required = false)
+	private File resultFile;
+
+	@Parameter(label = "Rows kept in result table (-1 = all, 0 = none)", min = "-1")
+	private int tableRows = -1;
 
 	@SuppressWarnings("rawtypes")
 	@Parameter(type = ItemIO.OUTPUT)
@@ -81,8 +227,97 @@ public class ModuleBatchProcessor<T> extends DynamicCommand {
 	@Parameter
 	private TaskService taskService;
 
+	@Parameter
+	private ConvertService convertService;
+
+	@Parameter
+	private PluginService pluginService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter(required = false)
+	private IOService ioService;
+
+	private InputFiller<File> inputFiller;
+	private InputFiller<List<File>> chunkFiller;
+	private OrderedResults results;
+	private final List<String> outputNames = new ArrayList<>();
+	private final List<ResultSink> sinks = new ArrayList<>();
+	private TableResultSink tableSink;
+	private CompiledScriptCache scriptCache;
+	private BatchJournal journal;
+	private volatile boolean journalFailed;
+	private ResultCache cache;
+	private AdmissionController admission;
+	private OutputWriter outputWriter;
+	/**
+	 * Hash of the non-batched input values, or "" if they can't be hashed.
+	 * Computed before the first file runs, see {@link #hashInputs}.
+	 */
+	private volatile String inputsHash;
+	private ProgressReporter progress;
+	private BatchMetrics metrics;
+	private ExecutorService virtualExecutor;
+	/** Whether the full processing chain succeeded once */
+	private volatile boolean prepared;
+	private final Set<Future<Module>> running = ConcurrentHashMap.newKeySet();
+	private Iterator<File> inputFiles;
+	private long nextIndex;
+
+	/**
+	 * A copy of the module together with the processors run with it.
+	 * Processors keep state between runs, e.g. whether they canceled a module,
+	 * so they are never shared between modules that may run at the same time:
+	 * each worker thread (or pooled virtual thread task) has its own, and they
+	 * are replaced together with a module that timed out.
+	 */
+	private class Worker {
+
+		private final Module module;
+		private List<PreprocessorPlugin> preprocessors;
+		private List<PostprocessorPlugin> postprocessors;
+		private boolean minimal;
+
+		private Worker(Module module) {
+			this.module = module;
+		}
+
+		/**
+		 * Create the full or the fast path processors, unless they exist
+		 * already. Preprocessors that canceled a module are replaced, as their
+		 * canceled state can't be reset and would cancel all later files.
+		 */
+		private void prepareProcessors(boolean fast) {
+			if (preprocessors != null && minimal == fast && !canceled()) return;
+			minimal = fast;
+			if (fast) {
+				preprocessors = fastPathPreprocessors();
+				postprocessors = Collections.emptyList();
+			} else {
+				preprocessors = pluginService.createInstancesOfType(PreprocessorPlugin.class);
+				postprocessors = pluginService.createInstancesOfType(PostprocessorPlugin.class);
+			}
+		}
+
+		private boolean canceled() {
+			for (PreprocessorPlugin processor : preprocessors) {
+				if (processor.isCanceled()) return true;
+			}
+			return false;
+		}
+	}
+
 	// -- Initializer --
 
+	protected void initInputs() {
+		initInputChoice();
+		if (inputSource != null) {
+			// files are provided by the source, don't ask for a list
+			resolveInput("inputFileList");
+		}
+	}
+
 	protected void initInputChoice() {
 		MutableModuleItem<String> choiceInput = getInfo().getMutableInput("inputChoice", String.class);
 		// Get compatible inputs for moduleInfo
@@ -103,21 +338,54 @@ public class ModuleBatchProcessor<T> extends DynamicCommand {
 
 	@Override
 	public void run() {
+		if (inputSource == null) {
+			inputSource = FileSource.of(inputFileList == null ? new File[0] : inputFileList);
+		}
 		// mark inputChoice as resolved, then harvest script parameters (i.e. run)
 		ModuleItem<?> inputModuleItem = moduleInfo.getInput(inputChoice);
+		inputFiller = batchService.getInputFiller(inputModuleItem, File.class);
+		if (inputFiller == null) {
+			chunkFiller = getChunkFiller(inputModuleItem);
+		}
+		if (inputFiller == null && chunkFiller == null) {
+			log.error("Input '" + inputChoice + "' can not be batch-processed.");
+			return;
+		}
 		// TODO check if conversion needed?
-		Module scriptModule = moduleService.createModule(moduleInfo);
+		scriptCache = new CompiledScriptCache();
+		Module scriptModule = createModule();
 		scriptModule.resolveInput(inputChoice);
+		if (!presetInputs(scriptModule)) {
+			return;
+		}
 
-		/* Create output Table and mark all outputs as resolved */
-		outputTable = new DefaultGenericTable();
-		@SuppressWarnings("rawtypes")
-		List<Column> columns = new ArrayList<>();
-
+		/* Collect output columns and mark all outputs as resolved */
+		List<Class<?>> outputTypes = new ArrayList<>();
 		for (String outputKey : scriptModule.getOutputs().keySet()) {
-			columns.add(outputTable.appendColumn(outputKey));
+			ModuleItem<?> outputItem = moduleInfo.getOutput(outputKey);
+			outputNames.add(outputKey);
+			// NB: outputs saved to the output folder are replaced by their path
+			outputTypes.add(outputItem == null ? Object.class : rowType(outputItem.getType()));
 			scriptModule.resolveOutput(outputKey);
 		}
+		if (timeout > 0) {
+			outputNames.add(STATUS_COLUMN);
+			outputTypes.add(String.class);
+		}
+		if (outputFolder != null) {
+			if (ioService == null) {
+				log.error("Unable to save outputs to " + outputFolder + ": no IOService");
+				return;
+			}
+			outputWriter = new OutputWriter(ioService, log, outputFolder,
+					outputPattern == null ? OutputWriter.DEFAULT_PATTERN : outputPattern,
+					Math.max(OUTPUT_QUEUE_CAPACITY, 2 * workers), OUTPUT_WRITERS);
+		}
+		if (!openSinks(outputTypes)) {
+			closeOutputWriter();
+			return;
+		}
+		results = new OrderedResults(this::appendResult);
 
 		String taskName = "Batch:";
 		ModuleInfo scriptInfo = scriptModule.getInfo();
@@ -125,19 +393,63 @@ public class ModuleBatchProcessor<T> extends DynamicCommand {
 			taskName = scriptInfo.getName();
 		}
 		Task batchTask = taskService.createTask(taskName);
-		batchTask.setProgressMaximum(inputFileList.length);
-		batchTask.setCancelCallBack(() -> batchTask.setStatusMessage("Cancelling batch task..."));
-		for (File file : inputFileList) {
-			batchTask.setStatusMessage("process "+file.getName());
-			if (!(processFile(scriptModule, inputModuleItem, file))) {
-				log.warn("Terminating batch process.");
-				break; // end for loop
+		batchTask.setProgressMaximum(inputSource.size());
+		batchTask.setCancelCallBack(() -> {
+			batchTask.setStatusMessage("Cancelling batch task...");
+			// stop discovery, and end waiting for files (e.g. in a watched folder)
+			inputSource.close();
+			// interrupt running modules instead of waiting for them to finish
+			for (Future<Module> instance : running) {
+				instance.cancel(true);
 			}
-			if (batchTask.isCanceled()) {
-				log.warn("Terminating batch process.");
-				break; // end for loop
+		});
+		if (cacheFolder != null) {
+			openCache();
+		}
+		if (cache != null && chunkFiller == null && !needsHarvesting(scriptModule)) {
+			// otherwise hashed once harvested, before the first file runs
+			inputsHash = hashInputs(scriptModule);
+		}
+		if (journalFile != null && !openJournal()) {
+			closeOutputWriter();
+			closeCache();
+			closeSinks();
+			batchTask.finish();
+			return;
+		}
+		metrics = new BatchMetrics(taskName);
+		metrics.setTotal(inputSource.size());
+		startMetrics(batchTask);
+		inputFiles = inputSource.iterator();
+		if (heapFraction > 0 && workers > 1) {
+			admission = new AdmissionController(heapFraction);
+		}
+		if (prefetch > 0) {
+			inputFiles = new Prefetcher(inputFiles, prefetch, prefetchBudget * (1L << 20), metrics);
+		}
+		try {
+			if (workers > 1 && virtualThreads) {
+				runVirtual(scriptModule, batchTask);
+			}
+			else if (workers > 1) {
+				runParallel(scriptModule, batchTask);
+			}
+			else {
+				runSequential(scriptModule, batchTask);
+			}
+		}
+		finally {
+			if (inputFiles instanceof Prefetcher) {
+				((Prefetcher) inputFiles).close();
 			}
-			batchTask.setProgressValue(batchTask.getProgressValue() + 1);
+			inputSource.close();
+			// pass on results held back by files that were never completed
+			results.flush();
+			closeOutputWriter();
+			closeJournal();
+			closeCache();
+			closeSinks();
+			stopMetrics();
 		}
 		batchTask.finish();
 		// case File
@@ -146,29 +458,759 @@ public class ModuleBatchProcessor<T> extends DynamicCommand {
 		//   open each file as image (warn on errors) and feed image into input
 	}
 	
+	// -- ModuleBatchProcessor methods --
+
+	/**
+	 * Get the metrics of the current (or last) run of this batch processor.
+	 *
+	 * @return the metrics, or null if the batch was not started
+	 */
+	public BatchMetrics getMetrics() {
+		return metrics;
+	}
+
 	// -- Helper methods --
-	
-	@SuppressWarnings("unchecked")
-	private boolean processFile(Module module, ModuleItem<?> inputModuleItem, File file) {
-		batchService.fillInput(module, inputModuleItem, file);
+
+	private void runSequential(Module module, Task batchTask) {
+		Worker worker = new Worker(module);
+		BatchItem item;
+		while ((item = nextItem(batchTask)) != null) {
+			Outcome outcome = processFile(worker, item);
+			if (outcome == Outcome.STOP || batchTask.isCanceled()) {
+				log.warn("Terminating batch process.");
+				break; // end for loop
+			}
+			if (outcome == Outcome.REPLACE_MODULE) {
+				worker = new Worker(copyModule(worker.module));
+			}
+			progress.advance(item.size());
+		}
+	}
+
+	/**
+	 * Process the first file on the template module, so that any remaining
+	 * inputs are harvested exactly once. Then distribute the remaining files
+	 * over {@link #workers} threads, each running its own copy of the module
+	 * with its own processors.
+	 */
+	private void runParallel(Module template, Task batchTask) {
+		if (!runFirst(template, batchTask)) return;
+
+		AtomicBoolean terminated = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		for (int t = 0; t < workers; t++) {
+			executor.execute(() -> {
+				Worker worker = new Worker(copyModule(template));
+				BatchItem item;
+				while (!terminated.get() && (item = nextItem(batchTask)) != null) {
+					Outcome outcome = processFile(worker, item);
+					if (outcome == Outcome.STOP || batchTask.isCanceled()) {
+						if (!terminated.getAndSet(true)) {
+							log.warn("Terminating batch process.");
+						}
+						return;
+					}
+					if (outcome == Outcome.REPLACE_MODULE) {
+						worker = new Worker(copyModule(template));
+					}
+					progress.advance(item.size());
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException exc) {
+			log.error("Error: interrupted batch execution", exc);
+			terminated.set(true);
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Process each file on a new virtual thread, with at most {@link #workers}
+	 * files in flight. Modules are run on the virtual threads themselves (not
+	 * via the {@link ModuleService}'s thread pool). Copies of the template and
+	 * their processors are reused from a pool, so that no two files in flight
+	 * share them. Falls back to {@link #runParallel} if the JVM
+	 * does not support virtual threads.
+	 */
+	private void runVirtual(Module template, Task batchTask) {
+		ExecutorService executor = VirtualThreads.newExecutor();
+		if (executor == null) {
+			log.warn("Virtual threads are not supported by this JVM, using " + workers + " platform threads.");
+			runParallel(template, batchTask);
+			return;
+		}
+		// modules that may time out run on separate threads that are not awaited
+		virtualExecutor = timeout > 0 ? VirtualThreads.newExecutor() : null;
+		try {
+			if (runFirst(template, batchTask)) {
+				runVirtual(template, batchTask, executor);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+			if (virtualExecutor != null) {
+				virtualExecutor.shutdownNow();
+			}
+		}
+	}
+
+	private void runVirtual(Module template, Task batchTask, ExecutorService executor) {
+		AtomicBoolean terminated = new AtomicBoolean();
+		Semaphore inFlight = new Semaphore(workers);
+		Queue<Worker> idle = new ConcurrentLinkedQueue<>();
+		try {
+			while (!terminated.get()) {
+				inFlight.acquire();
+				BatchItem item = terminated.get() ? null : nextItem(batchTask);
+				if (item == null) {
+					inFlight.release();
+					break;
+				}
+				executor.execute(() -> {
+					Worker worker = idle.poll();
+					if (worker == null) worker = new Worker(copyModule(template));
+					Outcome outcome = Outcome.STOP;
+					try {
+						outcome = processFile(worker, item);
+						if (outcome == Outcome.STOP || batchTask.isCanceled()) {
+							if (!terminated.getAndSet(true)) {
+								log.warn("Terminating batch process.");
+							}
+							return;
+						}
+						progress.advance(item.size());
+					}
+					finally {
+						if (outcome != Outcome.REPLACE_MODULE) {
+							idle.offer(worker);
+						}
+						inFlight.release();
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException exc) {
+			log.error("Error: interrupted batch execution", exc);
+			terminated.set(true);
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Process the first file that is not replayed from the journal on the
+	 * template module, so that any remaining inputs are harvested once.
+	 *
+	 * @return false if there are no more files or the batch was terminated
+	 */
+	private boolean runFirst(Module template, Task batchTask) {
+		BatchItem first;
+		while ((first = nextItem(batchTask)) != null && replayJournal(first)) {
+			progress.advance(first.size());
+		}
+		if (first == null) return false;
+		// NB: a timed out template is still fine to copy from
+		if (processFile(new Worker(template), first) == Outcome.STOP || batchTask.isCanceled()) {
+			log.warn("Terminating batch process.");
+			return false;
+		}
+		progress.advance(first.size());
+		return true;
+	}
+
+	/**
+	 * Assign the values of {@link #moduleInputs} to the module and mark them as
+	 * resolved.
+	 *
+	 * @return false if an input does not exist or its value can not be converted
+	 */
+	private boolean presetInputs(Module module) {
+		if (moduleInputs == null) return true;
+		for (Entry<String, Object> entry : moduleInputs.entrySet()) {
+			ModuleItem<?> input = moduleInfo.getInput(entry.getKey());
+			if (input == null) {
+				log.error("Unknown input: " + entry.getKey());
+				return false;
+			}
+			Object value = entry.getValue();
+			if (value != null && !convertService.supports(value, input.getType())) {
+				log.error("Invalid value for input " + entry.getKey() + ": " + value);
+				return false;
+			}
+			module.setInput(input.getName(), convertService.convert(value, input.getType()));
+			module.resolveInput(input.getName());
+		}
+		return true;
+	}
+
+	/**
+	 * Take the next file (or chunk of {@link #chunkSize} files for array
+	 * inputs) from {@link #inputSource}, waiting for it to be discovered if
+	 * necessary.
+	 *
+	 * @return the next item, or null if there are no more input files
+	 */
+	private BatchItem nextItem(Task batchTask) {
+		synchronized (inputFiles) {
+			if (!inputFiles.hasNext()) return null;
+			BatchItem item;
+			if (chunkFiller == null) {
+				item = new BatchItem(nextIndex, inputFiles.next());
+			}
+			else {
+				List<File> chunk = new ArrayList<>(chunkSize);
+				while (chunk.size() < chunkSize && inputFiles.hasNext()) {
+					chunk.add(inputFiles.next());
+				}
+				item = new BatchItem(nextIndex, chunk);
+			}
+			nextIndex += item.size();
+			if (metrics.getTotal() != inputSource.size()) {
+				// more files have been discovered in the meantime
+				metrics.setTotal(inputSource.size());
+			}
+			for (int i = 0; i < item.size(); i++) {
+				metrics.itemStarted();
+			}
+			return item;
+		}
+	}
+
+	/**
+	 * Create a new module from {@link #moduleInfo} with the same input values
+	 * and the same resolved inputs and outputs as the given {@code template}.
+	 */
+	private Module copyModule(Module template) {
+		Module module = createModule();
+		for (Entry<String, Object> input : template.getInputs().entrySet()) {
+			String name = input.getKey();
+			module.setInput(name, input.getValue());
+			if (template.isInputResolved(name)) {
+				module.resolveInput(name);
+			}
+		}
+		for (String name : template.getOutputs().keySet()) {
+			if (template.isOutputResolved(name)) {
+				module.resolveOutput(name);
+			}
+		}
+		return module;
+	}
+
+	/**
+	 * Create a new module from {@link #moduleInfo}. Scripts are compiled once
+	 * per batch (see {@link CompiledScriptCache}) instead of once per file.
+	 */
+	private Module createModule() {
+		if (moduleInfo instanceof ScriptInfo) {
+			Module module = new CachedScriptModule((ScriptInfo) moduleInfo, scriptCache);
+			getContext().inject(module);
+			return module;
+		}
+		return moduleService.createModule(moduleInfo);
+	}
+
+	private Outcome processFile(Worker worker, BatchItem item) {
+		Module module = worker.module;
+		if (replayJournal(item)) return Outcome.NEXT;
+		String cacheKey = cacheKey(item);
+		try {
+			if (replayCache(item, cacheKey)) return Outcome.NEXT;
+		} catch (InterruptedException exc) {
+			log.error("Error: interrupted while saving outputs", exc);
+			Thread.currentThread().interrupt();
+			completeCanceled(item);
+			return Outcome.STOP;
+		}
+		if (chunkFiller != null) {
+			chunkFiller.fill(module, item.files);
+		} else {
+			inputFiller.fill(module, item.file);
+		}
 		//fileInput.setValue(module, file);
-		outputTable.appendRow(file.getName());
 
-		Future<Module> instance = moduleService.run(module, true);
+		long inputBytes = 0;
+		long reservation = 0;
+		if (admission != null) {
+			for (File file : item.files) {
+				inputBytes += file.length();
+			}
+			try {
+				reservation = admission.admit(inputBytes);
+			} catch (InterruptedException exc) {
+				log.error("Error: interrupted while waiting for memory", exc);
+				Thread.currentThread().interrupt();
+				completeCanceled(item);
+				return Outcome.STOP;
+			}
+		}
+		long start = System.nanoTime();
+		Future<Module> instance = submit(worker);
 		try {
 			// run the script
-			Map<String, Object> outputs = instance.get().getOutputs();
-			for (Entry<String, Object> output : outputs.entrySet()) {
-				outputTable.set(output.getKey(), outputTable.getRowCount() - 1,
-						output.getValue());
+			Module done = timeout > 0 ? instance.get(timeout, TimeUnit.SECONDS) : instance.get();
+			Map<String, Object> outputs = done.getOutputs();
+			prepared = true;
+			// cache the outputs themselves, not where they are saved this time
+			storeCache(item, cacheKey, outputs);
+			if (chunkFiller == null) {
+				outputs = writeOutputs(item.file, item.index, outputs);
 			}
-			return true;
+			long nanos = (System.nanoTime() - start) / item.size();
+			for (int i = 0; i < item.size(); i++) {
+				Map<String, Object> rowOutputs = chunkFiller == null ? outputs
+						: writeOutputs(item.files.get(i), item.index + i, rowOutputs(outputs, i, item.size()));
+				metrics.itemSucceeded(nanos);
+				writeJournal(item.files.get(i), rowOutputs);
+				complete(item, i, rowOutputs, STATUS_OK);
+			}
+			return Outcome.NEXT;
+		} catch (TimeoutException exc) {
+			instance.cancel(true);
+			log.warn("Timed out after " + timeout + " s: " + item);
+			long nanos = (System.nanoTime() - start) / item.size();
+			for (int i = 0; i < item.size(); i++) {
+				metrics.itemTimedOut(nanos);
+				complete(item, i, Collections.emptyMap(), STATUS_TIMED_OUT);
+			}
+			return Outcome.REPLACE_MODULE;
+		} catch (CancellationException exc) {
+			// the batch task was canceled
+			completeCanceled(item);
+			return Outcome.STOP;
 		} catch (InterruptedException exc) {
 			log.error("Error: interrupted module execution", exc);
-			return false;
+			instance.cancel(true);
+			completeCanceled(item);
+			return Outcome.STOP;
 		} catch (ExecutionException exc) {
 			log.error("Error during module execution", exc);
-			return true; // continue loop
+			long nanos = (System.nanoTime() - start) / item.size();
+			for (int i = 0; i < item.size(); i++) {
+				metrics.itemFailed(nanos);
+				complete(item, i, Collections.emptyMap(), STATUS_FAILED);
+			}
+			return Outcome.NEXT; // continue loop
+		} finally {
+			running.remove(instance);
+			if (admission != null) {
+				admission.release(reservation, inputBytes);
+			}
+		}
+	}
+
+	/**
+	 * Publish {@link #metrics} via JMX, and progress and metrics summary as
+	 * task status at a fixed rate.
+	 */
+	private void startMetrics(Task batchTask) {
+		try {
+			metrics.register();
+		} catch (JMException exc) {
+			log.warn("Unable to publish batch metrics via JMX", exc);
+		}
+		progress = new ProgressReporter(batchTask, metrics::getTotal, metrics::getSummary, STATUS_INTERVAL_MS);
+	}
+
+	private void stopMetrics() {
+		metrics.finish();
+		progress.close();
+		try {
+			metrics.unregister();
+		} catch (JMException exc) {
+			log.warn("Unable to unregister batch metrics", exc);
+		}
+		log.info(metrics.toString());
+	}
+
+	/**
+	 * Start the module of a worker with its pre- and postprocessors, which are
+	 * only the {@link #fastPathPreprocessors()} once the full chain succeeded on
+	 * the fast path. The module is run on the calling thread, or on a new
+	 * thread if it may time out. The returned future is registered as
+	 * {@link #running} before the module starts, so that canceling the batch
+	 * task interrupts it.
+	 */
+	private Future<Module> submit(Worker worker) {
+		boolean minimal = fastPath && prepared;
+		worker.prepareProcessors(minimal);
+		List<PreprocessorPlugin> pre = worker.preprocessors;
+		if (cache != null && chunkFiller == null && inputsHash == null) {
+			// hash the inputs as harvested, before the module can change them
+			pre = new ArrayList<>(pre);
+			pre.add(new InputsSnapshot());
+		}
+		ModuleRunner runner = new ModuleRunner(getContext(), worker.module, pre,
+				worker.postprocessors);
+		FutureTask<Module> task = new FutureTask<>(runner, worker.module);
+		running.add(task);
+		if (timeout <= 0) {
+			task.run();
+		} else if (virtualExecutor != null) {
+			virtualExecutor.execute(task);
+		} else {
+			threadService.run(task);
+		}
+		return task;
+	}
+
+	/**
+	 * Create the preprocessors that are still run for each file on the fast
+	 * path: those with a higher priority than the {@link InputHarvester}s,
+	 * which initialize the module, check that it is valid and inject services,
+	 * the gateway and a logger into new module instances. The harvesters and
+	 * all later preprocessors (e.g. saving input values) and postprocessors
+	 * (e.g. displaying outputs) are skipped.
+	 */
+	private List<PreprocessorPlugin> fastPathPreprocessors() {
+		List<PluginInfo<PreprocessorPlugin>> infos = new ArrayList<>();
+		for (PluginInfo<PreprocessorPlugin> info : pluginService.getPluginsOfType(PreprocessorPlugin.class)) {
+			if (info.getPriority() > InputHarvester.PRIORITY) {
+				infos.add(info);
+			}
+		}
+		return pluginService.createInstances(infos);
+	}
+
+	/**
+	 * Pass the outputs of the {@code i}-th file of an item on to the results,
+	 * with status if requested.
+	 */
+	private void complete(BatchItem item, int i, Map<String, Object> outputs, String status) {
+		if (timeout > 0) {
+			outputs = new HashMap<>(outputs);
+			outputs.put(STATUS_COLUMN, status);
+		}
+		results.complete(item.index + i, item.files.get(i), outputs);
+	}
+
+	/**
+	 * Pass on the files of an item that was not (completely) processed because
+	 * the batch was stopped, so that the results of later files are not held
+	 * back.
+	 */
+	private void completeCanceled(BatchItem item) {
+		for (int i = 0; i < item.size(); i++) {
+			complete(item, i, Collections.emptyMap(), STATUS_CANCELED);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private InputFiller<List<File>> getChunkFiller(ModuleItem<?> moduleItem) {
+		return (InputFiller) batchService.getInputFiller(moduleItem, List.class);
+	}
+
+	/**
+	 * Get the result column type of an output; for chunks, array outputs are
+	 * split into one element per file.
+	 */
+	private Class<?> rowType(Class<?> outputType) {
+		if (chunkFiller == null) return outputType;
+		if (outputType.isArray()) return outputType.getComponentType();
+		if (List.class.isAssignableFrom(outputType)) return Object.class;
+		return outputType;
+	}
+
+	/**
+	 * Get the outputs of the {@code row}-th file of a chunk of {@code rows}
+	 * files: arrays and lists with one element per file are split, other
+	 * values are repeated for each file. Arrays and lists of a different
+	 * length are dropped.
+	 */
+	private static Map<String, Object> rowOutputs(Map<String, Object> outputs, int row, int rows) {
+		Map<String, Object> rowOutputs = new HashMap<>();
+		for (Entry<String, Object> output : outputs.entrySet()) {
+			Object value = output.getValue();
+			if (value != null && value.getClass().isArray()) {
+				value = Array.getLength(value) == rows ? Array.get(value, row) : null;
+			}
+			else if (value instanceof List) {
+				List<?> list = (List<?>) value;
+				value = list.size() == rows ? list.get(row) : null;
+			}
+			rowOutputs.put(output.getKey(), value);
+		}
+		return rowOutputs;
+	}
+
+	private void openCache() {
+		try {
+			cache = new ResultCache(cacheFolder, cacheSize * (1L << 20), ContentHash.of(moduleInfo));
+		} catch (IOException exc) {
+			log.error("Unable to open result cache, continuing without it", exc);
+		}
+	}
+
+	/**
+	 * Get the cache key of a single-file item.
+	 *
+	 * @return the key, or null if the item can't be cached (yet)
+	 */
+	private String cacheKey(BatchItem item) {
+		String hash = inputsHash;
+		if (cache == null || chunkFiller != null || hash == null || hash.isEmpty()) return null;
+		try {
+			return cache.key(item.file, hash);
+		} catch (IOException exc) {
+			log.debug("Unable to hash " + item.file, exc);
+			return null;
+		}
+	}
+
+	/**
+	 * Pass on the cached outputs if the given file was processed before with
+	 * the same script and inputs, saving them to the {@link #outputFolder} like
+	 * the outputs of a processed file.
+	 *
+	 * @return true if the file does not need to be processed
+	 */
+	private boolean replayCache(BatchItem item, String cacheKey) throws InterruptedException {
+		if (cacheKey == null) return false;
+		Map<String, Object> outputs = cache.get(cacheKey);
+		if (outputs == null) return false;
+		outputs = writeOutputs(item.file, item.index, outputs);
+		metrics.itemCached();
+		writeJournal(item.file, outputs);
+		complete(item, 0, outputs, STATUS_OK);
+		return true;
+	}
+
+	private void storeCache(BatchItem item, String cacheKey, Map<String, Object> outputs) {
+		if (cache == null || chunkFiller != null) return;
+		String key = cacheKey != null ? cacheKey : cacheKey(item);
+		if (key == null) return;
+		try {
+			cache.put(key, outputs);
+		} catch (IOException exc) {
+			log.warn("Unable to cache results of " + item.file, exc);
+		}
+	}
+
+	/**
+	 * Whether the module has inputs that are not set yet, except the batched
+	 * one and injected ones. Their values are only known once they were
+	 * harvested for the first file.
+	 */
+	private boolean needsHarvesting(Module module) {
+		for (ModuleItem<?> input : module.getInfo().inputs()) {
+			if (!input.getName().equals(inputChoice) && !isInjected(input)
+					&& !module.isInputResolved(input.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isInjected(ModuleItem<?> input) {
+		Class<?> type = input.getType();
+		return Service.class.isAssignableFrom(type) || Context.class.isAssignableFrom(type)
+				|| Logger.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * Hash the values of all inputs except the batched one and injected ones
+	 * (services, context, logger). This is done before the first file runs,
+	 * with the preset input values or, once harvested, right before the module
+	 * runs (see {@link InputsSnapshot}), as modules may change their inputs.
+	 *
+	 * @return the hash, or "" if a value can't be hashed reliably
+	 */
+	private String hashInputs(Module module) {
+		MessageDigest digest = ContentHash.digest();
+		try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// only digest
+			}
+		}, digest))) {
+			Set<String> names = new TreeSet<>();
+			for (ModuleItem<?> input : module.getInfo().inputs()) {
+				if (!input.getName().equals(inputChoice) && !isInjected(input)) {
+					names.add(input.getName());
+				}
+			}
+			for (String name : names) {
+				Object value = module.getInput(name);
+				if (!ValueCodec.isLossless(value)) {
+					log.info("Input " + name + " can't be hashed, not caching results.");
+					return "";
+				}
+				ValueCodec.writeString(out, name);
+				ValueCodec.write(out, value);
+			}
+		} catch (IOException exc) {
+			log.info("Inputs can't be hashed, not caching results.", exc);
+			return "";
+		}
+		return ContentHash.toHex(digest.digest());
+	}
+
+	/**
+	 * Hashes the inputs of the first file that runs, after the other
+	 * preprocessors harvested them.
+	 */
+	private class InputsSnapshot extends AbstractPreprocessorPlugin {
+
+		@Override
+		public void process(Module module) {
+			if (inputsHash == null) inputsHash = hashInputs(module);
+		}
+	}
+
+	private void closeCache() {
+		if (cache == null) return;
+		try {
+			cache.close();
+		} catch (IOException exc) {
+			log.error("Unable to close result cache " + cacheFolder, exc);
+		}
+		cache = null;
+	}
+
+	private boolean openJournal() {
+		try {
+			journal = new BatchJournal(journalFile, ContentHash.of(moduleInfo), resume);
+			if (resume) {
+				log.info("Resuming batch: " + journal.size() + " journaled files");
+			}
+			return true;
+		} catch (IOException exc) {
+			log.error("Unable to open journal file " + journalFile, exc);
+			return false;
+		}
+	}
+
+	/**
+	 * Pass on the journaled outputs if the given file was already completed in
+	 * a previous run.
+	 *
+	 * @return true if the file does not need to be processed again
+	 */
+	private boolean replayJournal(BatchItem item) {
+		if (journal == null || !resume) return false;
+		List<Map<String, Object>> journaled = new ArrayList<>(item.size());
+		for (File file : item.files) {
+			Map<String, Object> outputs = journal.lookup(file);
+			// NB: chunks are only skipped as a whole
+			if (outputs == null) return false;
+			journaled.add(outputs);
+		}
+		for (int i = 0; i < item.size(); i++) {
+			metrics.itemReplayed();
+			complete(item, i, journaled.get(i), STATUS_OK);
+		}
+		return true;
+	}
+
+	/**
+	 * Queue non-scalar outputs for saving to {@link #outputFolder}, if set.
+	 *
+	 * @return the outputs with saved values replaced by their paths
+	 */
+	private Map<String, Object> writeOutputs(File file, long index, Map<String, Object> outputs)
+			throws InterruptedException {
+		if (outputWriter == null) return outputs;
+		return outputWriter.write(file, index, outputs);
+	}
+
+	private void closeOutputWriter() {
+		if (outputWriter == null) return;
+		outputWriter.close();
+		if (outputWriter.getFailed() > 0) {
+			log.warn(outputWriter.getFailed() + " outputs could not be saved to " + outputFolder);
+		}
+		outputWriter = null;
+	}
+
+	private void writeJournal(File file, Map<String, Object> outputs) {
+		if (journal == null || journalFailed) return;
+		try {
+			journal.record(file, outputs);
+		} catch (IOException exc) {
+			journalFailed = true;
+			log.error("Unable to write journal, continuing without it", exc);
+		}
+	}
+
+	private void closeJournal() {
+		if (journal == null) return;
+		try {
+			journal.close();
+		} catch (IOException exc) {
+			log.error("Unable to close journal file " + journalFile, exc);
+		}
+		journal = null;
+	}
+
+	/**
+	 * Open the in-memory table (unless disabled) and the result file sink.
+	 *
+	 * @return false if the results can not be written as requested
+	 */
+	private boolean openSinks(List<Class<?>> outputTypes) {
+		if (tableRows != 0) {
+			tableSink = new TableResultSink(tableRows);
+			sinks.add(tableSink);
+		}
+		try {
+			if (resultFile != null) {
+				ResultSink fileSink = batchService.createResultSink(resultFile);
+				if (fileSink == null) {
+					log.error("Unsupported result file format: " + resultFile.getName());
+					return false;
+				}
+				sinks.add(fileSink);
+			}
+			for (ResultSink sink : sinks) {
+				sink.open(outputNames, outputTypes);
+			}
+			return true;
+		} catch (IOException exc) {
+			log.error("Unable to write results to " + resultFile, exc);
+			closeSinks();
+			return false;
+		}
+	}
+
+	private void closeSinks() {
+		for (ResultSink sink : sinks) {
+			try {
+				sink.close();
+			} catch (IOException exc) {
+				log.error("Unable to close results file " + resultFile, exc);
+			}
+		}
+		sinks.clear();
+		outputTable = tableSink == null ? null : tableSink.getTable();
+	}
+
+	/** Pass a row of results to all sinks, in input order. */
+	private void appendResult(File file, Map<String, Object> outputs) {
+		Object[] values = new Object[outputNames.size()];
+		for (int c = 0; c < values.length; c++) {
+			values[c] = outputs.get(outputNames.get(c));
+		}
+		Iterator<ResultSink> iter = sinks.iterator();
+		while (iter.hasNext()) {
+			ResultSink sink = iter.next();
+			try {
+				sink.append(file.getName(), values);
+			} catch (IOException exc) {
+				log.error("Unable to write results, continuing without results file", exc);
+				iter.remove();
+				try {
+					sink.close();
+				} catch (IOException e) {
+					// already reported
+				}
+			}
 		}
 	}
 
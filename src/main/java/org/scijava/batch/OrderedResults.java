@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects results of batch items that may complete in any order, and hands
+ * them on in input order.
+ * <p>
+ * Each result is registered with the (zero-based) index of its input file.
+ * Results are passed to the {@link Consumer} as soon as all results with a
+ * lower index have been passed on, so that only out-of-order results are kept
+ * in memory.
+ * </p>
+ *
+ * @author agent
+ */
+class OrderedResults {
+
+	@FunctionalInterface
+	interface Consumer {
+		void accept(File file, Map<String, Object> outputs);
+	}
+
+	private final Consumer consumer;
+	private final Map<Long, Entry> pending = new HashMap<>();
+	private long nextIndex = 0;
+
+	OrderedResults(final Consumer consumer) {
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Registers the outputs for the input file at position {@code index}, and
+	 * passes on all results that are now in order. Only the first result for
+	 * each index is kept.
+	 */
+	synchronized void complete(final long index, final File file,
+		final Map<String, Object> outputs)
+	{
+		if (index < nextIndex) return;
+		if (index != nextIndex) {
+			pending.putIfAbsent(index, new Entry(file, outputs));
+			return;
+		}
+		consumer.accept(file, outputs);
+		nextIndex++;
+		Entry entry;
+		while ((entry = pending.remove(nextIndex)) != null) {
+			consumer.accept(entry.file, entry.outputs);
+			nextIndex++;
+		}
+	}
+
+	/**
+	 * Passes on all pending results in input order, skipping indices that were
+	 * never completed, e.g. when the batch was stopped. Results completed later
+	 * for a skipped index are ignored.
+	 */
+	synchronized void flush() {
+		for (final Map.Entry<Long, Entry> entry : new TreeMap<>(pending)
+			.entrySet())
+		{
+			consumer.accept(entry.getValue().file, entry.getValue().outputs);
+			nextIndex = entry.getKey() + 1;
+		}
+		pending.clear();
+	}
+
+	/** Number of results that have been passed on so far. */
+	synchronized long count() {
+		return nextIndex;
+	}
+
+	private static class Entry {
+		private final File file;
+		private final Map<String, Object> outputs;
+
+		private Entry(final File file, final Map<String, Object> outputs) {
+			this.file = file;
+			this.outputs = outputs;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.scijava.io.IOService;
+import org.scijava.log.Logger;
+
+/**
+ * Saves non-scalar module outputs (e.g. images and tables) to an output
+ * folder on dedicated writer threads, through the {@link IOService}.
+ * <p>
+ * {@link #write} replaces each such output by the path it is saved to and
+ * queues the value; workers only wait when the bounded queue is full, i.e.
+ * when writing falls behind processing. File names are derived from the
+ * input file with a pattern, in which {@code {name}} stands for the input
+ * name without extension, {@code {ext}} for its extension, {@code {output}}
+ * for the output name and {@code {index}} for the position of the input.
+ * </p>
+ * <p>
+ * Outputs for which the {@link IOService} has no saver stay in the results
+ * as they are. Each file is written at most once per batch: if the pattern
+ * yields the same file for two outputs, the second one is not saved and
+ * counted as failed.
+ * </p>
+ *
+ * @author agent
+ */
+class OutputWriter implements Closeable {
+
+	/** Default pattern for output file names. */
+	static final String DEFAULT_PATTERN = "{name}_{index}_{output}.tif";
+
+	private static final Job END = new Job(null, null);
+
+	private final IOService ioService;
+	private final Logger log;
+	private final File folder;
+	private final String pattern;
+	private final BlockingQueue<Job> queue;
+	private final List<Thread> writers = new ArrayList<>();
+	private final AtomicLong failed = new AtomicLong();
+	private final Set<File> targets = ConcurrentHashMap.newKeySet();
+	private final Set<String> unsaveable = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param capacity the maximum number of outputs waiting to be saved
+	 * @param threads the number of writer threads
+	 */
+	OutputWriter(final IOService ioService, final Logger log, final File folder,
+		final String pattern, final int capacity, final int threads)
+	{
+		this.ioService = ioService;
+		this.log = log;
+		this.folder = folder;
+		this.pattern = pattern;
+		queue = new ArrayBlockingQueue<>(capacity);
+		for (int t = 0; t < threads; t++) {
+			final Thread writer = new Thread(this::save, "Batch output writer " + t);
+			writer.setDaemon(true);
+			writer.start();
+			writers.add(writer);
+		}
+	}
+
+	/**
+	 * Queues the non-scalar outputs of an input file for saving.
+	 *
+	 * @return the outputs, with queued values replaced by their paths
+	 */
+	Map<String, Object> write(final File input, final long index,
+		final Map<String, Object> outputs) throws InterruptedException
+	{
+		final Map<String, Object> written = new HashMap<>(outputs);
+		for (final Entry<String, Object> output : outputs.entrySet()) {
+			final Object value = output.getValue();
+			if (value == null || isScalar(value.getClass())) continue;
+			final File target = target(input, index, output.getKey());
+			if (ioService.getSaver(value, target.getPath()) == null) {
+				if (unsaveable.add(output.getKey())) {
+					log.warn("Unable to save output " + output.getKey() + " (" + value
+						.getClass().getName() + "), keeping it in the results");
+				}
+				continue;
+			}
+			if (!targets.add(target)) {
+				failed.incrementAndGet();
+				log.error("Not overwriting " + target + " with output " + output
+					.getKey() + " of " + input + ", check the output file name pattern");
+				continue;
+			}
+			queue.put(new Job(target, value));
+			written.put(output.getKey(), target.getPath());
+		}
+		return written;
+	}
+
+	/** Number of outputs that could not be saved. */
+	long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Waits until all queued outputs are saved.
+	 */
+	@Override
+	public void close() {
+		boolean interrupted = false;
+		for (int t = 0; t < writers.size(); t++) {
+			try {
+				queue.put(END);
+			}
+			catch (final InterruptedException exc) {
+				interrupted = true;
+			}
+		}
+		for (final Thread writer : writers) {
+			try {
+				writer.join();
+			}
+			catch (final InterruptedException exc) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Returns true for types that are stored in the results directly rather
+	 * than saved to files: primitives, numbers, text, enums, paths, and arrays
+	 * of those.
+	 */
+	static boolean isScalar(final Class<?> type) {
+		if (type.isArray()) return isScalar(type.getComponentType());
+		return type.isPrimitive() || Number.class.isAssignableFrom(type) ||
+			type == Boolean.class || type == Character.class ||
+			CharSequence.class.isAssignableFrom(type) || type.isEnum() ||
+			File.class.isAssignableFrom(type) || Path.class.isAssignableFrom(type);
+	}
+
+	// -- Helper methods --
+
+	private File target(final File input, final long index,
+		final String output)
+	{
+		final String name = input.getName();
+		final int dot = name.lastIndexOf('.');
+		final String base = dot > 0 ? name.substring(0, dot) : name;
+		final String ext = dot > 0 ? name.substring(dot + 1) : "";
+		return new File(folder, pattern.replace("{name}", base) //
+			.replace("{ext}", ext) //
+			.replace("{output}", output) //
+			.replace("{index}", String.valueOf(index)));
+	}
+
+	private void save() {
+		while (true) {
+			final Job job;
+			try {
+				job = queue.take();
+			}
+			catch (final InterruptedException exc) {
+				return;
+			}
+			if (job == END) return;
+			try {
+				job.target.getParentFile().mkdirs();
+				ioService.save(job.data, job.target.getPath());
+			}
+			catch (final Exception exc) {
+				failed.incrementAndGet();
+				log.error("Unable to save output to " + job.target, exc);
+			}
+		}
+	}
+
+	private static class Job {
+
+		private final File target;
+		private final Object data;
+
+		private Job(final File target, final Object data) {
+			this.target = target;
+			this.data = data;
+		}
+	}
+}
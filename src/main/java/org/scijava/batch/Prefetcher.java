@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.scijava.batch.metrics.BatchMetrics;
+
+/**
+ * Iterates input files while warming the operating system's page cache for
+ * the next files, so that a module finds its input already read from
+ * (possibly remote) storage.
+ * <p>
+ * A feeder thread takes files from the source iterator up to {@code depth}
+ * files ahead of the consumer and hands each one to a small pool of threads
+ * that read it into pooled buffers, discarding the data. At most
+ * {@code budget / (depth + 1)} bytes are read per file, so that the data read
+ * ahead never exceeds the memory budget. A file counts as a prefetch hit if
+ * it was completely warmed when the consumer took it; reading files that are
+ * taken earlier is abandoned. Files that fail to be read are counted as
+ * prefetch failures rather than hits or misses.
+ * </p>
+ *
+ * @author agent
+ */
+class Prefetcher implements Iterator<File>, Closeable {
+
+	/** Maximum number of threads reading files ahead */
+	static final int MAX_THREADS = 4;
+
+	/** Size of the pooled read buffers */
+	static final int BUFFER_SIZE = 1 << 20;
+
+	private static final int PENDING = 0, WARMING = 1, WARM = 2, FAILED = 3,
+		TAKEN = 4;
+
+	/** Marks the end of the input */
+	private static final Entry END = new Entry(null);
+
+	private final Iterator<File> source;
+	private final BatchMetrics metrics;
+	private final long bytesPerFile;
+	private final BlockingQueue<Entry> window;
+	private final BlockingQueue<ByteBuffer> buffers;
+	private final ExecutorService readers;
+	private final Thread feeder;
+	private volatile RuntimeException failure;
+	private Entry next;
+
+	/**
+	 * @param source the files to iterate
+	 * @param depth number of files to read ahead
+	 * @param budget maximum number of bytes read ahead
+	 * @param metrics receives prefetch hits and misses; may be null
+	 */
+	Prefetcher(final Iterator<File> source, final int depth, final long budget,
+		final BatchMetrics metrics)
+	{
+		this.source = source;
+		this.metrics = metrics;
+		bytesPerFile = budget / (depth + 1);
+		window = new ArrayBlockingQueue<>(depth);
+		final int threads = Math.min(depth, MAX_THREADS);
+		buffers = new ArrayBlockingQueue<>(threads);
+		readers = Executors.newFixedThreadPool(threads, r -> daemon(r,
+			"Batch prefetch"));
+		feeder = daemon(this::feed, "Batch prefetch feeder");
+		feeder.start();
+	}
+
+	// -- Iterator methods --
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = window.take();
+			}
+			catch (final InterruptedException exc) {
+				Thread.currentThread().interrupt();
+				next = END;
+			}
+		}
+		if (next == END) {
+			if (failure != null) throw failure;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public File next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		final Entry entry = next;
+		next = null;
+		final int state = entry.state.getAndSet(TAKEN);
+		if (metrics != null) {
+			if (state == FAILED) metrics.prefetchFailed();
+			else metrics.prefetchTaken(state == WARM);
+		}
+		return entry.file;
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public void close() {
+		feeder.interrupt();
+		readers.shutdownNow();
+	}
+
+	// -- Helper methods --
+
+	/** Move files from the source into the window, starting to warm each. */
+	private void feed() {
+		try {
+			try {
+				while (source.hasNext()) {
+					final Entry entry = new Entry(source.next());
+					readers.execute(() -> warm(entry));
+					window.put(entry);
+				}
+			}
+			catch (final RuntimeException exc) {
+				failure = exc;
+			}
+			window.put(END);
+		}
+		catch (final InterruptedException exc) {
+			// closed
+		}
+	}
+
+	private void warm(final Entry entry) {
+		if (!entry.state.compareAndSet(PENDING, WARMING)) return;
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		int result = FAILED;
+		try (FileChannel channel = FileChannel.open(entry.file.toPath(),
+			StandardOpenOption.READ))
+		{
+			long remaining = bytesPerFile;
+			while (remaining > 0 && entry.state.get() == WARMING) {
+				buffer.clear();
+				if (remaining < buffer.capacity()) buffer.limit((int) remaining);
+				final int read = channel.read(buffer);
+				if (read < 0) remaining = 0;
+				else remaining -= read;
+			}
+			// only a read up to the end of the file or the budget is a hit
+			if (remaining <= 0) result = WARM;
+		}
+		catch (final IOException exc) {
+			// the module will report the problem when reading the file
+		}
+		finally {
+			buffers.offer(buffer);
+		}
+		entry.state.compareAndSet(WARMING, result);
+	}
+
+	private static Thread daemon(final Runnable runnable, final String name) {
+		final Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	private static class Entry {
+
+		private final File file;
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+
+		private Entry(final File file) {
+			this.file = file;
+		}
+	}
+
+}
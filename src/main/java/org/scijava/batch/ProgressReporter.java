@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.scijava.task.Task;
+
+/**
+ * Publishes the progress of a batch to its {@link Task} at a fixed rate,
+ * instead of once per file.
+ * <p>
+ * Workers report completed files with {@link #advance(long)}, which only adds
+ * to a {@link LongAdder}. A single publisher thread passes the progress value
+ * and maximum on to the task when they change, and the status message at a
+ * lower rate, so that task events are bounded regardless of the number of
+ * files per second. {@link #close()} publishes the final state.
+ * </p>
+ *
+ * @author agent
+ */
+class ProgressReporter implements AutoCloseable {
+
+	/** Interval of progress updates */
+	static final long PROGRESS_INTERVAL_MS = 100;
+
+	private final Task task;
+	private final LongSupplier total;
+	private final Supplier<String> status;
+	private final long statusIntervalMs;
+	private final LongAdder done = new LongAdder();
+	private final ScheduledExecutorService publisher;
+
+	private long publishedValue = -1;
+	private long publishedMaximum = -1;
+	private long lastStatus;
+
+	/**
+	 * @param total supplies the current number of files
+	 * @param status supplies the status message
+	 * @param statusIntervalMs interval of status message updates
+	 */
+	ProgressReporter(final Task task, final LongSupplier total,
+		final Supplier<String> status, final long statusIntervalMs)
+	{
+		this.task = task;
+		this.total = total;
+		this.status = status;
+		this.statusIntervalMs = statusIntervalMs;
+		publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "Batch status");
+			thread.setDaemon(true);
+			return thread;
+		});
+		publisher.scheduleAtFixedRate(this::publish, 0, PROGRESS_INTERVAL_MS,
+			TimeUnit.MILLISECONDS);
+	}
+
+	/** Counts {@code n} more files as done. */
+	void advance(final long n) {
+		done.add(n);
+	}
+
+	/** Number of files done so far. */
+	long getDone() {
+		return done.sum();
+	}
+
+	/**
+	 * Stops the periodic updates and publishes the final progress and status.
+	 */
+	@Override
+	public void close() {
+		publisher.shutdownNow();
+		try {
+			publisher.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			publishProgress();
+			task.setStatusMessage(status.get());
+		}
+	}
+
+	// -- Helper methods --
+
+	private synchronized void publish() {
+		publishProgress();
+		final long now = System.currentTimeMillis();
+		// keep the cancel message while the batch is terminating
+		if (now - lastStatus >= statusIntervalMs && !task.isCanceled()) {
+			lastStatus = now;
+			task.setStatusMessage(status.get());
+		}
+	}
+
+	private void publishProgress() {
+		final long maximum = total.getAsLong();
+		if (maximum != publishedMaximum) {
+			publishedMaximum = maximum;
+			task.setProgressMaximum(maximum);
+		}
+		final long value = done.sum();
+		if (value != publishedValue) {
+			publishedValue = value;
+			task.setProgressValue(value);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A {@link FileSource} fed by a producer thread through a bounded queue.
+ * <p>
+ * The producer is started when iteration begins. It calls {@link #put(File)}
+ * for each discovered file and {@link #finish()} when done; it blocks while
+ * the queue is full, so that discovery never runs more than the queue
+ * capacity ahead of processing. The consumer iterates the source (once),
+ * blocking while the queue is empty. Closing the source stops the producer;
+ * the iteration then delivers the files still queued and ends without
+ * waiting, even while discovery is still running.
+ * </p>
+ *
+ * @author agent
+ */
+class QueueFileSource implements FileSource {
+
+	/**
+	 * Interval at which waiting consumers check for the end of discovery or
+	 * the source being closed
+	 */
+	private static final long POLL_MS = 100;
+
+	private final BlockingQueue<File> queue;
+	private final Executor executor;
+	private final Consumer<QueueFileSource> producer;
+	private final AtomicBoolean started = new AtomicBoolean();
+	private final AtomicLong size = new AtomicLong();
+	private volatile boolean complete;
+	private volatile boolean closed;
+
+	/**
+	 * @param capacity the maximum number of queued files
+	 * @param executor runs the producer
+	 * @param producer discovers files and calls {@link #put(File)} and
+	 *          {@link #finish()} on the given source
+	 */
+	QueueFileSource(final int capacity, final Executor executor,
+		final Consumer<QueueFileSource> producer)
+	{
+		queue = new ArrayBlockingQueue<>(capacity);
+		this.executor = executor;
+		this.producer = producer;
+	}
+
+	// -- Producer methods --
+
+	/**
+	 * Adds a file to the queue, blocking while the queue is full.
+	 *
+	 * @return false if the source has been closed and discovery should stop
+	 */
+	boolean put(final File file) throws InterruptedException {
+		while (!closed) {
+			if (queue.offer(file, 100, TimeUnit.MILLISECONDS)) {
+				size.incrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns true once the consumer has stopped the source. */
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Marks the end of discovery. Files still in the queue are delivered
+	 * before iteration ends.
+	 */
+	void finish() {
+		complete = true;
+	}
+
+	// -- FileSource methods --
+
+	@Override
+	public long size() {
+		return size.get();
+	}
+
+	@Override
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	// -- Iterable methods --
+
+	@Override
+	public Iterator<File> iterator() {
+		if (!started.getAndSet(true)) {
+			executor.execute(() -> producer.accept(this));
+		}
+		return new Iterator<File>() {
+
+			private File next;
+			private boolean done;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && !done) {
+					if (closed) {
+						// deliver what is queued, without waiting for more
+						next = queue.poll();
+						done = next == null;
+						break;
+					}
+					// NB: check before polling, so that no file put before the end
+					// of discovery is missed
+					final boolean end = complete;
+					try {
+						next = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+					}
+					catch (final InterruptedException exc) {
+						Thread.currentThread().interrupt();
+						done = true;
+					}
+					if (next == null && end && queue.isEmpty()) done = true;
+				}
+				return next != null;
+			}
+
+			@Override
+			public File next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				final File file = next;
+				next = null;
+				return file;
+			}
+		};
+	}
+}
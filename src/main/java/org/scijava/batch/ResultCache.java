@@ -0,0 +1,335 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An on-disk cache of module outputs, keyed by the content hashes of the
+ * script, the other (non-batched) input values and the input file.
+ * <p>
+ * Each entry is stored as a file {@code <key>.res} in the cache folder. The
+ * cache is bounded in size: when it grows beyond its limit, the least recently
+ * used entries are deleted (across runs, recency is taken from the entries'
+ * modification times, which are updated on every hit).
+ * </p>
+ * <p>
+ * To avoid hashing the content of unchanged input files, an index of the
+ * path, size, modification time and content hash of hashed files is kept in
+ * the file {@value #INDEX_FILE}, written when the cache is closed. The index
+ * keeps the {@value #MAX_INDEXED_FILES} most recently hashed files.
+ * </p>
+ *
+ * @author agent
+ */
+public class ResultCache implements Closeable {
+
+	public static final String INDEX_FILE = "files.idx";
+
+	/** Default maximum number of files in the hash index */
+	public static final int MAX_INDEXED_FILES = 100000;
+
+	private static final String SUFFIX = ".res";
+	private static final int INDEX_MAGIC = 0x534a4349; // "SJCI"
+	private static final int INDEX_VERSION = 1;
+
+	private final File folder;
+	private final long maxBytes;
+	private final String scriptHash;
+
+	/** Entry sizes by key, in access order */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalBytes;
+
+	/** Content hashes by file path, in access order */
+	private final LinkedHashMap<String, FileHash> fileHashes;
+	private boolean indexChanged;
+
+	/**
+	 * @param folder the cache folder, created if necessary
+	 * @param maxBytes the maximum total size of cache entries
+	 * @param scriptHash identifies the module code, see
+	 *          {@link ContentHash#of(org.scijava.module.ModuleInfo)}
+	 */
+	public ResultCache(final File folder, final long maxBytes,
+		final String scriptHash) throws IOException
+	{
+		this(folder, maxBytes, scriptHash, MAX_INDEXED_FILES);
+	}
+
+	/**
+	 * @param maxIndexedFiles the maximum number of files in the hash index;
+	 *          the least recently used are dropped
+	 */
+	ResultCache(final File folder, final long maxBytes, final String scriptHash,
+		final int maxIndexedFiles) throws IOException
+	{
+		this.folder = folder;
+		this.maxBytes = maxBytes;
+		this.scriptHash = scriptHash;
+		fileHashes = new LinkedHashMap<String, FileHash>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(
+				final Entry<String, FileHash> eldest)
+			{
+				return size() > maxIndexedFiles;
+			}
+		};
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Unable to create cache folder " + folder);
+		}
+		final File[] files = folder.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files == null) throw new IOException("Unable to list " + folder);
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (final File file : files) {
+			final String name = file.getName();
+			entries.put(name.substring(0, name.length() - SUFFIX.length()), file
+				.length());
+			totalBytes += file.length();
+		}
+		readIndex();
+	}
+
+	/**
+	 * Get the cache key of a module run on the given input file.
+	 *
+	 * @param file the batched input file
+	 * @param inputsHash hash of the values of all other inputs
+	 */
+	public String key(final File file, final String inputsHash)
+		throws IOException
+	{
+		return ContentHash.of(scriptHash + ":" + inputsHash + ":" + contentHash(
+			file));
+	}
+
+	/**
+	 * Get the cached outputs for the given key.
+	 *
+	 * @return the outputs, or null if there is no (valid) entry
+	 */
+	public Map<String, Object> get(final String key) {
+		synchronized (this) {
+			// NB: also marks the entry as recently used
+			if (entries.get(key) == null) return null;
+		}
+		// read outside of the lock, like put writes outside of it
+		final File file = entryFile(key);
+		final Map<String, Object> outputs = new LinkedHashMap<>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(file))))
+		{
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				outputs.put(ValueCodec.readString(in), ValueCodec.read(in));
+			}
+		}
+		catch (final IOException exc) {
+			// corrupt entry, or evicted in the meantime
+			synchronized (this) {
+				remove(key);
+			}
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return outputs;
+	}
+
+	/**
+	 * Store outputs in the cache, evicting the least recently used entries if
+	 * the cache grows too large.
+	 *
+	 * @return false if the outputs can not be stored without loss, see
+	 *         {@link ValueCodec#isLossless(Object)}
+	 */
+	public boolean put(final String key, final Map<String, Object> outputs)
+		throws IOException
+	{
+		for (final Object value : outputs.values()) {
+			if (!ValueCodec.isLossless(value)) return false;
+		}
+		// write to a temporary file outside of the lock, then move it in place
+		final File temp = File.createTempFile(key, ".tmp", folder);
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp))))
+			{
+				out.writeInt(outputs.size());
+				for (final Entry<String, Object> output : outputs.entrySet()) {
+					ValueCodec.writeString(out, output.getKey());
+					ValueCodec.write(out, output.getValue());
+				}
+			}
+			synchronized (this) {
+				final File file = entryFile(key);
+				Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+				final Long previous = entries.put(key, file.length());
+				totalBytes += file.length() - (previous == null ? 0 : previous);
+				evict();
+			}
+			return true;
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long bytes() {
+		return totalBytes;
+	}
+
+	/** Number of files in the hash index. */
+	synchronized int indexedFiles() {
+		return fileHashes.size();
+	}
+
+	/** Writes the file hash index. */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!indexChanged) return;
+		final File temp = new File(folder, INDEX_FILE + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(temp))))
+		{
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeInt(fileHashes.size());
+			for (final Entry<String, FileHash> entry : fileHashes.entrySet()) {
+				final FileHash hash = entry.getValue();
+				ValueCodec.writeString(out, entry.getKey());
+				out.writeLong(hash.size);
+				out.writeLong(hash.modified);
+				ValueCodec.writeString(out, hash.hash);
+			}
+		}
+		Files.move(temp.toPath(), new File(folder, INDEX_FILE).toPath(),
+			StandardCopyOption.REPLACE_EXISTING);
+		indexChanged = false;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Get the content hash of a file, reusing the indexed hash if the file's
+	 * size and modification time did not change.
+	 */
+	private String contentHash(final File file) throws IOException {
+		final String path = file.getAbsolutePath();
+		final long size = file.length();
+		final long modified = file.lastModified();
+		synchronized (this) {
+			final FileHash indexed = fileHashes.get(path);
+			if (indexed != null && indexed.size == size &&
+				indexed.modified == modified) return indexed.hash;
+		}
+		final String hash = ContentHash.of(file);
+		synchronized (this) {
+			fileHashes.put(path, new FileHash(size, modified, hash));
+			indexChanged = true;
+		}
+		return hash;
+	}
+
+	private void evict() {
+		final Iterator<Entry<String, Long>> iter = entries.entrySet().iterator();
+		while (totalBytes > maxBytes && iter.hasNext()) {
+			final Entry<String, Long> eldest = iter.next();
+			entryFile(eldest.getKey()).delete();
+			totalBytes -= eldest.getValue();
+			iter.remove();
+		}
+	}
+
+	private void remove(final String key) {
+		final Long size = entries.remove(key);
+		if (size != null) totalBytes -= size;
+		entryFile(key).delete();
+	}
+
+	private File entryFile(final String key) {
+		return new File(folder, key + SUFFIX);
+	}
+
+	private void readIndex() {
+		final File file = new File(folder, INDEX_FILE);
+		if (!file.exists()) return;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(file))))
+		{
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) return;
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				final String path = ValueCodec.readString(in);
+				final long size = in.readLong();
+				final long modified = in.readLong();
+				fileHashes.put(path, new FileHash(size, modified, ValueCodec
+					.readString(in)));
+			}
+		}
+		catch (final IOException exc) {
+			// NB: an unreadable index only costs rehashing
+			fileHashes.clear();
+		}
+	}
+
+	private static class FileHash {
+
+		private final long size;
+		private final long modified;
+		private final String hash;
+
+		private FileHash(final long size, final long modified, final String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+}
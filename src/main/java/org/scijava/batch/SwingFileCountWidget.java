@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import javax.swing.JLabel;
+
+import org.scijava.Priority;
+import org.scijava.plugin.Plugin;
+import org.scijava.ui.swing.widget.SwingInputWidget;
+import org.scijava.widget.InputWidget;
+import org.scijava.widget.WidgetModel;
+
+/**
+ * Shows the message of a {@link FileCountDialog}, and refreshes the dialog when
+ * the message was updated in the background, e.g. when a file count that took
+ * longer is known.
+ *
+ * @author agent
+ */
+@Plugin(type = InputWidget.class, priority = Priority.HIGH)
+public class SwingFileCountWidget extends SwingInputWidget<String> {
+
+	private JLabel label;
+
+	// -- WrapperPlugin methods --
+
+	@Override
+	public void set(final WidgetModel model) {
+		super.set(model);
+
+		label = new JLabel();
+		getComponent().add(label);
+		((FileCountDialog) model.getModule().getDelegateObject()).setRefresher(
+			() -> model.getPanel().refresh());
+
+		refreshWidget();
+	}
+
+	// -- InputWidget methods --
+
+	@Override
+	public String getValue() {
+		final Object value = get().getValue();
+		return value == null ? null : value.toString();
+	}
+
+	// -- AbstractUIInputWidget methods --
+
+	@Override
+	protected void doRefresh() {
+		final String text = getValue();
+		label.setText(text == null ? "" : text);
+	}
+
+	@Override
+	public boolean supports(final WidgetModel model) {
+		return super.supports(model) && model.isMessage() && model.getModule()
+			.getDelegateObject() instanceof FileCountDialog;
+	}
+
+}
@@ -34,16 +34,16 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.swing.DefaultComboBoxModel;
 import javax.swing.JComboBox;
 import javax.swing.JPanel;
 
 import org.scijava.Priority;
 import org.scijava.log.LogService;
-import org.scijava.module.ModuleItem;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.script.ScriptInfo;
-import org.scijava.script.ScriptService;
+import org.scijava.thread.ThreadService;
 import org.scijava.ui.swing.widget.SwingInputWidget;
 import org.scijava.widget.InputWidget;
 import org.scijava.widget.WidgetModel;
@@ -53,17 +53,18 @@ public class SwingScriptInfoWidget extends SwingInputWidget<ScriptInfo>
 		implements ActionListener, ScriptInfoWidget<JPanel> {
 
 	@Parameter
-	private ScriptService scriptService;
+	private BatchService batchService;
 
 	@Parameter
-	private BatchService batchService;
+	private ThreadService threadService;
 
 	@Parameter
 	private LogService log;
 
 	private JComboBox<String> comboBox;
 
-	private Map<String, ScriptInfo> scriptMap = new HashMap<>();
+	/** Scripts by menu path; only accessed on the event dispatch thread. */
+	private final Map<String, ScriptInfo> scriptMap = new HashMap<>();
 
 	// -- ActionListener methods --
 
@@ -78,21 +79,23 @@ public class SwingScriptInfoWidget extends SwingInputWidget<ScriptInfo>
 	public void set(final WidgetModel model) {
 		super.set(model);
 
-		// create script map
-		for (ScriptInfo script : scriptService.getScripts()) {
-			List<ModuleItem<?>> compatibleInputs = batchService.batchableInputs(script);
-			if (!compatibleInputs.isEmpty()) {
-				scriptMap.put(script.getMenuPath().getMenuString(), script);
-			}
-		}
-
-		final String[] items = scriptMap.keySet().toArray(new String[scriptMap.size()]);
-
-		comboBox = new JComboBox<>(items);
+		comboBox = new JComboBox<>();
 		setToolTip(comboBox);
 		getComponent().add(comboBox);
 		comboBox.addActionListener(this);
 
+		// enumerate scripts in the background, adding them as they are found
+		threadService.run(() -> {
+			try {
+				List<ScriptInfo> scripts = batchService.batchableScripts(
+						script -> threadService.queue(() -> addScript(script)));
+				threadService.queue(() -> setScripts(scripts));
+			}
+			catch (RuntimeException exc) {
+				log.error("Error while listing batchable scripts", exc);
+			}
+		});
+
 		refreshWidget();
 	}
 
@@ -103,6 +106,30 @@ public class SwingScriptInfoWidget extends SwingInputWidget<ScriptInfo>
 		return scriptMap.get(comboBox.getSelectedItem());
 	}
 
+	// -- Helper methods --
+
+	private void addScript(ScriptInfo script) {
+		String menuString = script.getMenuPath().getMenuString();
+		if (scriptMap.put(menuString, script) == null) {
+			comboBox.addItem(menuString);
+		}
+	}
+
+	/** Replace the incrementally added scripts by the final sorted list. */
+	private void setScripts(List<ScriptInfo> scripts) {
+		Object selected = comboBox.getSelectedItem();
+		scriptMap.clear();
+		for (ScriptInfo script : scripts) {
+			scriptMap.putIfAbsent(script.getMenuPath().getMenuString(), script);
+		}
+		String[] items = scriptMap.keySet().stream().sorted().toArray(String[]::new);
+		comboBox.setModel(new DefaultComboBoxModel<>(items));
+		if (selected != null && scriptMap.containsKey(selected)) {
+			comboBox.setSelectedItem(selected);
+		}
+		updateModel();
+	}
+
 	// -- AbstractUIInputWidget methods --
 
 	@Override
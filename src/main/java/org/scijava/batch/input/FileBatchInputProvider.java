@@ -46,7 +46,7 @@ public class FileBatchInputProvider extends AbstractHandlerPlugin<BatchInput> im
 {
 	@Override
 	public boolean supports(BatchInput input) {
-		return canProvide(input.moduleItem());
+		return input.sourceType() == File.class && canProvide(input.moduleItem());
 	}
 
 	@Override
@@ -84,7 +84,7 @@ public class FileBatchInputProvider extends AbstractHandlerPlugin<BatchInput> im
 		return String.join(",", targetStyles);
 	}
 
-	private boolean hasStyle(ModuleItem<?> item, String style) {
+	static boolean hasStyle(ModuleItem<?> item, String style) {
 		String widgetStyle = item.getWidgetStyle();
 		if (widgetStyle == null) return false;
 		return Arrays.asList(widgetStyle.trim().split("\\s*,\\s*"))
@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.batch.input;
+
+import java.io.File;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.scijava.module.Module;
+import org.scijava.module.ModuleItem;
+import org.scijava.plugin.AbstractHandlerPlugin;
+import org.scijava.plugin.Plugin;
+import org.scijava.widget.FileWidget;
+
+/**
+ * Provides chunks of files (as a {@link List}) to {@code File[]} and
+ * {@code List<File>} inputs, so that a module can process several files per
+ * invocation.
+ *
+ * @author agent
+ */
+@Plugin(type = BatchInputProvider.class)
+public class FileChunkBatchInputProvider extends AbstractHandlerPlugin<BatchInput> implements
+	BatchInputProvider<List<File>>
+{
+	private final FileBatchInputProvider fileProvider = new FileBatchInputProvider();
+
+	@Override
+	public boolean supports(BatchInput input) {
+		return input.sourceType() == List.class && canProvide(input.moduleItem());
+	}
+
+	@Override
+	public boolean canProvide(ModuleItem<?> item) {
+		// we can't provide inputs for saving files
+		return isFileChunk(item) && !FileBatchInputProvider.hasStyle(item, FileWidget.SAVE_STYLE);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void populateInput(Module module, ModuleItem<?> moduleItem, List<File> inputObject) {
+		if (moduleItem.getType() == File[].class) {
+			((ModuleItem<File[]>) moduleItem).setValue(module, inputObject.toArray(new File[inputObject.size()]));
+		} else {
+			((ModuleItem<List<File>>) moduleItem).setValue(module, new ArrayList<>(inputObject));
+		}
+	}
+
+	@Override
+	public String getTargetWidgetStyle(ModuleItem<?> item) {
+		return fileProvider.getTargetWidgetStyle(item);
+	}
+
+	private boolean isFileChunk(ModuleItem<?> item) {
+		if (item.getType() == File[].class) return true;
+		if (!item.getType().isAssignableFrom(ArrayList.class)) return false;
+		Type genericType = item.getGenericType();
+		return genericType instanceof ParameterizedType && ((ParameterizedType) genericType)
+				.getActualTypeArguments()[0] == File.class;
+	}
+}
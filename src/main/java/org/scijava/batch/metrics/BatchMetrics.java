@@ -0,0 +1,339 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live counters, a latency histogram and an ETA of a single batch run. All
+ * update methods are thread-safe and cheap enough to call for every file.
+ * <p>
+ * The metrics can be published as a JMX MBean named
+ * {@code org.scijava.batch:type=BatchRun,name=<name>,id=<run>} with
+ * {@link #register()}, so that runs can be watched with e.g. JConsole.
+ * </p>
+ *
+ * @author agent
+ */
+public class BatchMetrics implements BatchMetricsMBean {
+
+	public static final String JMX_DOMAIN = "org.scijava.batch";
+
+	private static final AtomicLong RUN_IDS = new AtomicLong();
+
+	private final String name;
+	private final long startNanos = System.nanoTime();
+	private volatile long endNanos = -1;
+
+	private volatile long total;
+	private final LongAdder started = new LongAdder();
+	private final LongAdder succeeded = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder replayed = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+	private final LongAdder cached = new LongAdder();
+	private final LongAdder prefetchHits = new LongAdder();
+	private final LongAdder prefetchMisses = new LongAdder();
+	private final LongAdder prefetchFailures = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private ObjectName objectName;
+
+	public BatchMetrics(String name) {
+		this.name = name;
+	}
+
+	// -- Recording --
+
+	public void setTotal(long total) {
+		this.total = total;
+	}
+
+	public void itemStarted() {
+		started.increment();
+	}
+
+	public void itemSucceeded(long nanos) {
+		succeeded.increment();
+		latency.record(nanos);
+	}
+
+	public void itemFailed(long nanos) {
+		failed.increment();
+		latency.record(nanos);
+	}
+
+	/** Count a file as failed because it timed out. */
+	public void itemTimedOut(long nanos) {
+		timedOut.increment();
+		itemFailed(nanos);
+	}
+
+	public void itemReplayed() {
+		replayed.increment();
+	}
+
+	/** Count a file whose outputs were taken from the result cache. */
+	public void itemCached() {
+		cached.increment();
+	}
+
+	/**
+	 * Count a file taken from the prefetch stage.
+	 *
+	 * @param hit whether the file had been read ahead completely
+	 */
+	public void prefetchTaken(boolean hit) {
+		(hit ? prefetchHits : prefetchMisses).increment();
+	}
+
+	/** Count a file taken from the prefetch stage that could not be read. */
+	public void prefetchFailed() {
+		prefetchFailures.increment();
+	}
+
+	/** Stop the clock, so that throughput and elapsed time remain final. */
+	public void finish() {
+		if (endNanos < 0) endNanos = System.nanoTime();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	// -- JMX --
+
+	/** Publish these metrics on the platform MBean server. */
+	public synchronized void register() throws JMException {
+		if (objectName != null) return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=BatchRun,name=" +
+			ObjectName.quote(name) + ",id=" + RUN_IDS.incrementAndGet());
+		server.registerMBean(this, candidate);
+		objectName = candidate;
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (objectName == null) return;
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		objectName = null;
+	}
+
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	// -- BatchMetricsMBean methods --
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getTotal() {
+		return total;
+	}
+
+	@Override
+	public long getCompleted() {
+		return succeeded.sum() + failed.sum() + replayed.sum() + cached.sum();
+	}
+
+	@Override
+	public long getSucceeded() {
+		return succeeded.sum();
+	}
+
+	@Override
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	@Override
+	public long getTimedOut() {
+		return timedOut.sum();
+	}
+
+	@Override
+	public long getReplayed() {
+		return replayed.sum();
+	}
+
+	@Override
+	public long getCached() {
+		return cached.sum();
+	}
+
+	@Override
+	public long getInFlight() {
+		return Math.max(0, started.sum() - getCompleted());
+	}
+
+	@Override
+	public long getQueueDepth() {
+		return Math.max(0, total - started.sum());
+	}
+
+	@Override
+	public double getThroughput() {
+		long nanos = elapsedNanos();
+		return nanos == 0 ? 0 : (succeeded.sum() + failed.sum()) * 1e9 / nanos;
+	}
+
+	@Override
+	public double getErrorRate() {
+		long processed = succeeded.sum() + failed.sum();
+		return processed == 0 ? 0 : (double) failed.sum() / processed;
+	}
+
+	@Override
+	public long getPrefetchHits() {
+		return prefetchHits.sum();
+	}
+
+	@Override
+	public long getPrefetchMisses() {
+		return prefetchMisses.sum();
+	}
+
+	@Override
+	public long getPrefetchFailures() {
+		return prefetchFailures.sum();
+	}
+
+	@Override
+	public double getPrefetchHitRate() {
+		long hits = prefetchHits.sum();
+		long taken = hits + prefetchMisses.sum();
+		return taken == 0 ? 0 : (double) hits / taken;
+	}
+
+	@Override
+	public double getLatencyMean() {
+		return toMillis(latency.mean());
+	}
+
+	@Override
+	public double getLatencyP50() {
+		return toMillis(latency.percentile(0.5));
+	}
+
+	@Override
+	public double getLatencyP95() {
+		return toMillis(latency.percentile(0.95));
+	}
+
+	@Override
+	public double getLatencyP99() {
+		return toMillis(latency.percentile(0.99));
+	}
+
+	@Override
+	public double getLatencyMax() {
+		return toMillis(latency.max());
+	}
+
+	@Override
+	public long getElapsedSeconds() {
+		return TimeUnit.NANOSECONDS.toSeconds(elapsedNanos());
+	}
+
+	@Override
+	public long getEtaSeconds() {
+		long remaining = total - getCompleted();
+		if (remaining <= 0) return 0;
+		double throughput = getThroughput();
+		return throughput == 0 ? -1 : (long) Math.ceil(remaining / throughput);
+	}
+
+	/**
+	 * Get a one-line summary such as
+	 * {@code 120/500 files, 2 failed, 8.3 files/s, p50 95 ms, p95 210 ms, ETA 0:00:46}.
+	 */
+	@Override
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getCompleted()).append('/').append(total).append(" files");
+		long failures = failed.sum();
+		if (failures > 0) sb.append(", ").append(failures).append(" failed");
+		long timeouts = timedOut.sum();
+		if (timeouts > 0) sb.append(" (").append(timeouts).append(" timed out)");
+		long hits = cached.sum();
+		if (hits > 0) sb.append(", ").append(hits).append(" cached");
+		sb.append(String.format(Locale.ROOT, ", %.1f files/s", getThroughput()));
+		if (latency.count() > 0) {
+			sb.append(String.format(Locale.ROOT, ", p50 %.0f ms, p95 %.0f ms",
+				getLatencyP50(), getLatencyP95()));
+		}
+		if (prefetchHits.sum() + prefetchMisses.sum() > 0) {
+			sb.append(String.format(Locale.ROOT, ", prefetch hits %.0f%%",
+				getPrefetchHitRate() * 100));
+		}
+		long prefetchFailed = prefetchFailures.sum();
+		if (prefetchFailed > 0) {
+			sb.append(", ").append(prefetchFailed).append(" prefetch failures");
+		}
+		if (endNanos < 0) {
+			long eta = getEtaSeconds();
+			if (eta >= 0) sb.append(", ETA ").append(formatSeconds(eta));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + getSummary();
+	}
+
+	// -- Helper methods --
+
+	private long elapsedNanos() {
+		long end = endNanos;
+		return (end < 0 ? System.nanoTime() : end) - startNanos;
+	}
+
+	private static double toMillis(double nanos) {
+		return nanos / 1e6;
+	}
+
+	private static String formatSeconds(long seconds) {
+		return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600,
+			seconds / 60 % 60, seconds % 60);
+	}
+
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.metrics;
+
+/**
+ * JMX management interface of {@link BatchMetrics}. Times are in
+ * milliseconds unless noted otherwise.
+ *
+ * @author agent
+ */
+public interface BatchMetricsMBean {
+
+	String getName();
+
+	/** Number of input files known so far; may grow while files are found. */
+	long getTotal();
+
+	/** Number of files completed, including failed, journaled and cached ones. */
+	long getCompleted();
+
+	long getSucceeded();
+
+	/** Number of files that failed, including those that timed out. */
+	long getFailed();
+
+	long getTimedOut();
+
+	/** Number of files skipped because the journal had their results. */
+	long getReplayed();
+
+	/** Number of files whose results were taken from the result cache. */
+	long getCached();
+
+	/** Number of files that are currently being processed. */
+	long getInFlight();
+
+	/** Number of known files that were not yet started. */
+	long getQueueDepth();
+
+	/** Files processed per second since the start of the run. */
+	double getThroughput();
+
+	/** Fraction of processed files that failed. */
+	double getErrorRate();
+
+	long getPrefetchHits();
+
+	long getPrefetchMisses();
+
+	/** Number of files that could not be read ahead. */
+	long getPrefetchFailures();
+
+	/** Fraction of prefetched files that were read ahead completely. */
+	double getPrefetchHitRate();
+
+	double getLatencyMean();
+
+	double getLatencyP50();
+
+	double getLatencyP95();
+
+	double getLatencyP99();
+
+	double getLatencyMax();
+
+	long getElapsedSeconds();
+
+	/** Estimated seconds until all known files are done, or -1 if unknown. */
+	long getEtaSeconds();
+
+	String getSummary();
+
+}
@@ -0,0 +1,311 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.scijava.batch.ValueCodec;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.Table;
+
+/**
+ * Writes batch results in a compact binary column-oriented format.
+ * <p>
+ * Rows are collected into chunks of up to {@link #CHUNK_ROWS} rows. Each chunk
+ * is written column by column: columns declared as {@code double},
+ * {@code float}, {@code long}, {@code int} or {@code boolean} (or their boxed
+ * counterparts) are stored as raw primitive values plus a null bitmap; all
+ * other columns are encoded value by value with {@link ValueCodec}. A partial
+ * chunk is written if the last chunk was written more than
+ * {@link DelimitedResultSink#FLUSH_INTERVAL_MS} milliseconds ago.
+ * </p>
+ * <p>
+ * Use {@link #read(File)} to load a results file into a {@link Table}.
+ * </p>
+ *
+ * @author agent
+ */
+public class ColumnarResultSink implements ResultSink {
+
+	public static final int CHUNK_ROWS = 1024;
+
+	private static final int MAGIC = 0x534a4243; // "SJBC"
+	private static final int VERSION = 1;
+
+	private static final byte GENERIC = 'O';
+	private static final byte DOUBLE = 'D';
+	private static final byte FLOAT = 'F';
+	private static final byte LONG = 'J';
+	private static final byte INT = 'I';
+	private static final byte BOOLEAN = 'Z';
+
+	private final File file;
+	private DataOutputStream out;
+	private byte[] kinds;
+	private String[] rowHeaders;
+	private Object[][] columns;
+	private int rows;
+	private long lastFlush;
+
+	public ColumnarResultSink(final File file) {
+		this.file = file;
+	}
+
+	// -- ResultSink methods --
+
+	@Override
+	public void open(final List<String> headers, final List<Class<?>> types)
+		throws IOException
+	{
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+			file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(headers.size());
+		kinds = new byte[headers.size()];
+		for (int c = 0; c < kinds.length; c++) {
+			kinds[c] = kind(types.get(c));
+			ValueCodec.writeString(out, headers.get(c));
+		}
+		rowHeaders = new String[CHUNK_ROWS];
+		columns = new Object[kinds.length][CHUNK_ROWS];
+		lastFlush = System.currentTimeMillis();
+	}
+
+	@Override
+	public void append(final String rowHeader, final Object[] values)
+		throws IOException
+	{
+		rowHeaders[rows] = rowHeader;
+		for (int c = 0; c < columns.length; c++) {
+			columns[c][rows] = values[c];
+		}
+		rows++;
+		final long now = System.currentTimeMillis();
+		if (rows == CHUNK_ROWS || now -
+			lastFlush >= DelimitedResultSink.FLUSH_INTERVAL_MS)
+		{
+			writeChunk();
+			out.flush();
+			lastFlush = now;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out == null) return;
+		try {
+			writeChunk();
+			out.writeInt(0); // end marker
+		}
+		finally {
+			out.close();
+			out = null;
+		}
+	}
+
+	// -- Utility methods --
+
+	/**
+	 * Reads a file written by a {@link ColumnarResultSink} into a table.
+	 */
+	public static Table<?, ?> read(final File file) throws IOException {
+		final DefaultGenericTable table = new DefaultGenericTable();
+		try (final DataInputStream in = new DataInputStream(
+			new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a columnar results file: " + file);
+			}
+			final int nColumns = in.readInt();
+			for (int c = 0; c < nColumns; c++) {
+				table.appendColumn(ValueCodec.readString(in));
+			}
+			int rows;
+			while ((rows = in.readInt()) > 0) {
+				final int offset = table.getRowCount();
+				for (int r = 0; r < rows; r++) {
+					table.appendRow(ValueCodec.readString(in));
+				}
+				for (int c = 0; c < nColumns; c++) {
+					final Object[] values = readColumn(in, rows);
+					for (int r = 0; r < rows; r++) {
+						table.set(c, offset + r, values[r]);
+					}
+				}
+			}
+		}
+		catch (final EOFException exc) {
+			// incomplete file (e.g. batch still running); keep complete chunks
+		}
+		return table;
+	}
+
+	// -- Helper methods --
+
+	private void writeChunk() throws IOException {
+		if (rows == 0) return;
+		out.writeInt(rows);
+		for (int r = 0; r < rows; r++) {
+			ValueCodec.writeString(out, rowHeaders[r]);
+		}
+		for (int c = 0; c < columns.length; c++) {
+			writeColumn(columns[c], kinds[c]);
+		}
+		for (final Object[] column : columns) {
+			Arrays.fill(column, 0, rows, null);
+		}
+		rows = 0;
+	}
+
+	private void writeColumn(final Object[] values, final byte declaredKind)
+		throws IOException
+	{
+		final byte kind = matches(values, declaredKind) ? declaredKind : GENERIC;
+		out.writeByte(kind);
+		if (kind == GENERIC) {
+			for (int r = 0; r < rows; r++) {
+				ValueCodec.write(out, values[r]);
+			}
+			return;
+		}
+		// null bitmap
+		final byte[] nulls = new byte[(rows + 7) / 8];
+		for (int r = 0; r < rows; r++) {
+			if (values[r] == null) nulls[r / 8] |= 1 << (r % 8);
+		}
+		out.write(nulls);
+		for (int r = 0; r < rows; r++) {
+			final Object v = values[r];
+			switch (kind) {
+				case DOUBLE:
+					out.writeDouble(v == null ? Double.NaN : (Double) v);
+					break;
+				case FLOAT:
+					out.writeFloat(v == null ? Float.NaN : (Float) v);
+					break;
+				case LONG:
+					out.writeLong(v == null ? 0 : (Long) v);
+					break;
+				case INT:
+					out.writeInt(v == null ? 0 : (Integer) v);
+					break;
+				case BOOLEAN:
+					out.writeBoolean(v != null && (Boolean) v);
+					break;
+			}
+		}
+	}
+
+	private static Object[] readColumn(final DataInputStream in, final int rows)
+		throws IOException
+	{
+		final Object[] values = new Object[rows];
+		final byte kind = in.readByte();
+		if (kind == GENERIC) {
+			for (int r = 0; r < rows; r++) {
+				values[r] = ValueCodec.read(in);
+			}
+			return values;
+		}
+		final byte[] nulls = new byte[(rows + 7) / 8];
+		in.readFully(nulls);
+		for (int r = 0; r < rows; r++) {
+			final Object v;
+			switch (kind) {
+				case DOUBLE:
+					v = in.readDouble();
+					break;
+				case FLOAT:
+					v = in.readFloat();
+					break;
+				case LONG:
+					v = in.readLong();
+					break;
+				case INT:
+					v = in.readInt();
+					break;
+				case BOOLEAN:
+					v = in.readBoolean();
+					break;
+				default:
+					throw new IOException("Unknown column type: " + kind);
+			}
+			final boolean isNull = (nulls[r / 8] & (1 << (r % 8))) != 0;
+			values[r] = isNull ? null : v;
+		}
+		return values;
+	}
+
+	/**
+	 * Checks whether all values of a column chunk match its declared type.
+	 */
+	private boolean matches(final Object[] values, final byte kind) {
+		if (kind == GENERIC) return true;
+		final Class<?> boxed = boxedType(kind);
+		for (int r = 0; r < rows; r++) {
+			if (values[r] != null && values[r].getClass() != boxed) return false;
+		}
+		return true;
+	}
+
+	private static byte kind(final Class<?> type) {
+		if (type == double.class || type == Double.class) return DOUBLE;
+		if (type == float.class || type == Float.class) return FLOAT;
+		if (type == long.class || type == Long.class) return LONG;
+		if (type == int.class || type == Integer.class) return INT;
+		if (type == boolean.class || type == Boolean.class) return BOOLEAN;
+		return GENERIC;
+	}
+
+	private static Class<?> boxedType(final byte kind) {
+		switch (kind) {
+			case DOUBLE:
+				return Double.class;
+			case FLOAT:
+				return Float.class;
+			case LONG:
+				return Long.class;
+			case INT:
+				return Integer.class;
+			default:
+				return Boolean.class;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.output;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes batch results as delimiter-separated text (CSV or TSV).
+ * <p>
+ * Rows are written through a buffer that is flushed at least every
+ * {@link #FLUSH_INTERVAL_MS} milliseconds, so that the file follows the
+ * progress of the batch without a write call for every row.
+ * </p>
+ *
+ * @author agent
+ */
+public class DelimitedResultSink implements ResultSink {
+
+	public static final long FLUSH_INTERVAL_MS = 1000;
+
+	private static final String ROW_HEADER = "File";
+
+	private final File file;
+	private final char separator;
+	private Writer writer;
+	private long lastFlush;
+
+	public DelimitedResultSink(final File file, final char separator) {
+		this.file = file;
+		this.separator = separator;
+	}
+
+	// -- ResultSink methods --
+
+	@Override
+	public void open(final List<String> headers, final List<Class<?>> types)
+		throws IOException
+	{
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+			file), StandardCharsets.UTF_8), 1 << 16);
+		writer.write(escape(ROW_HEADER));
+		for (final String header : headers) {
+			writer.write(separator);
+			writer.write(escape(header));
+		}
+		writer.write('\n');
+		lastFlush = System.currentTimeMillis();
+	}
+
+	@Override
+	public void append(final String rowHeader, final Object[] values)
+		throws IOException
+	{
+		writer.write(escape(rowHeader));
+		for (final Object value : values) {
+			writer.write(separator);
+			if (value != null) writer.write(escape(value.toString()));
+		}
+		writer.write('\n');
+		final long now = System.currentTimeMillis();
+		if (now - lastFlush >= FLUSH_INTERVAL_MS) {
+			writer.flush();
+			lastFlush = now;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Quotes a value if it contains the separator, quotes or line breaks.
+	 */
+	private String escape(final String value) {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			final char c = value.charAt(i);
+			quote = c == separator || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) return value;
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}
@@ -0,0 +1,215 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.output;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scijava.table.Column;
+
+/**
+ * A {@link Column} of strings that stores each distinct value only once.
+ * <p>
+ * Rows hold an {@code int} code into a dictionary of distinct values, which
+ * saves memory for columns with many repeated values, such as directory names
+ * or status messages. Values that are no longer used by any row are dropped
+ * from the dictionary once they make up most of it, e.g. after old rows were
+ * removed.
+ * </p>
+ *
+ * @author agent
+ */
+public class DictionaryColumn extends AbstractList<String> implements
+	Column<String>
+{
+
+	private static final int NULL = -1;
+
+	private final List<String> dictionary = new ArrayList<>();
+	private final Map<String, Integer> codes = new HashMap<>();
+	private int[] rows = new int[16];
+	private int size;
+	private String header;
+
+	public DictionaryColumn() {
+		this(null);
+	}
+
+	public DictionaryColumn(final String header) {
+		this.header = header;
+	}
+
+	/** Number of distinct (non-null) values in this column. */
+	public int distinctValues() {
+		return dictionary.size();
+	}
+
+	// -- Column methods --
+
+	@Override
+	public String getHeader() {
+		return header;
+	}
+
+	@Override
+	public void setHeader(final String header) {
+		this.header = header;
+	}
+
+	@Override
+	public Class<String> getType() {
+		return String.class;
+	}
+
+	@Override
+	public void fill(final String[] values) {
+		fill(values, 0);
+	}
+
+	@Override
+	public void fill(final String[] values, final int offset) {
+		if (offset + values.length > size) setSize(offset + values.length);
+		for (int i = 0; i < values.length; i++) {
+			rows[offset + i] = code(values[i]);
+		}
+	}
+
+	// -- Sizable methods --
+
+	@Override
+	public void setSize(final int newSize) {
+		ensureCapacity(newSize);
+		if (newSize > size) Arrays.fill(rows, size, newSize, NULL);
+		size = newSize;
+	}
+
+	// -- List methods --
+
+	@Override
+	public String get(final int index) {
+		checkIndex(index);
+		final int code = rows[index];
+		return code == NULL ? null : dictionary.get(code);
+	}
+
+	@Override
+	public String set(final int index, final String value) {
+		final String previous = get(index);
+		rows[index] = code(value);
+		return previous;
+	}
+
+	@Override
+	public void add(final int index, final String value) {
+		if (index < 0 || index > size) throw new IndexOutOfBoundsException("" +
+			index);
+		ensureCapacity(size + 1);
+		System.arraycopy(rows, index, rows, index + 1, size - index);
+		rows[index] = code(value);
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public String remove(final int index) {
+		final String previous = get(index);
+		System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+		size--;
+		modCount++;
+		pruneIfSparse();
+		return previous;
+	}
+
+	@Override
+	protected void removeRange(final int fromIndex, final int toIndex) {
+		System.arraycopy(rows, toIndex, rows, fromIndex, size - toIndex);
+		size -= toIndex - fromIndex;
+		modCount++;
+		pruneIfSparse();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// -- Helper methods --
+
+	private int code(final String value) {
+		if (value == null) return NULL;
+		Integer code = codes.get(value);
+		if (code == null) {
+			code = dictionary.size();
+			dictionary.add(value);
+			codes.put(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Rebuilds the dictionary from the values still in use, if it holds more
+	 * than twice as many values as there are rows.
+	 */
+	private void pruneIfSparse() {
+		if (dictionary.size() <= 2 * Math.max(size, 16)) return;
+		final List<String> used = new ArrayList<>();
+		final int[] remap = new int[dictionary.size()];
+		Arrays.fill(remap, NULL);
+		for (int i = 0; i < size; i++) {
+			final int code = rows[i];
+			if (code == NULL) continue;
+			if (remap[code] == NULL) {
+				remap[code] = used.size();
+				used.add(dictionary.get(code));
+			}
+			rows[i] = remap[code];
+		}
+		dictionary.clear();
+		dictionary.addAll(used);
+		codes.clear();
+		for (int code = 0; code < used.size(); code++) {
+			codes.put(used.get(code), code);
+		}
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity > rows.length) {
+			rows = Arrays.copyOf(rows, Math.max(capacity, rows.length * 2));
+		}
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("" +
+			index);
+	}
+}
@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.output;
+
+import java.util.List;
+
+import org.scijava.table.BoolColumn;
+import org.scijava.table.ByteColumn;
+import org.scijava.table.Column;
+import org.scijava.table.DefaultGenericTable;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.FloatColumn;
+import org.scijava.table.GenericColumn;
+import org.scijava.table.IntColumn;
+import org.scijava.table.LongColumn;
+import org.scijava.table.ShortColumn;
+import org.scijava.table.Table;
+
+/**
+ * Collects batch results in an in-memory {@link Table}, optionally keeping only
+ * the most recent rows.
+ * <p>
+ * Columns for primitive (or boxed primitive) outputs are backed by primitive
+ * arrays, and {@code String} columns start as {@link DictionaryColumn}s; all
+ * other outputs go into generic columns. A {@code String} column with mostly
+ * distinct values (e.g. file paths) is converted to a generic column, since
+ * a dictionary would not save memory. Missing values are stored as
+ * {@code NaN} in floating point columns; any other primitive column is
+ * converted to a generic column when a missing value arrives, so that it
+ * can hold {@code null} instead of a misleading zero (or false).
+ * </p>
+ *
+ * @author agent
+ */
+public class TableResultSink implements ResultSink {
+
+	/** Distinct values above which a dictionary column may be converted */
+	public static final int MAX_DICTIONARY_SIZE = 1024;
+
+	private final int window;
+	private DefaultGenericTable table;
+
+	/**
+	 * @param window the maximum number of (most recent) rows to keep, or a
+	 *          negative number to keep all rows
+	 */
+	public TableResultSink(final int window) {
+		this.window = window;
+	}
+
+	/**
+	 * Returns the collected results.
+	 */
+	public Table<?, ?> getTable() {
+		return table;
+	}
+
+	// -- ResultSink methods --
+
+	@Override
+	public void open(final List<String> headers, final List<Class<?>> types) {
+		table = new DefaultGenericTable();
+		for (int c = 0; c < headers.size(); c++) {
+			table.add(createColumn(headers.get(c), types.get(c)));
+		}
+	}
+
+	@Override
+	public void append(final String rowHeader, final Object[] values) {
+		// NB: drop old rows in bulk, to avoid shifting the table for every row
+		if (window >= 0 && table.getRowCount() >= 2 * Math.max(window, 1)) {
+			table.removeRows(0, table.getRowCount() - window);
+		}
+		table.appendRow(rowHeader);
+		final int row = table.getRowCount() - 1;
+		for (int c = 0; c < values.length; c++) {
+			if (!fits(table.get(c), values[c])) {
+				table.set(c, toGenericColumn(table.get(c)));
+			}
+			set(table.get(c), row, values[c]);
+			if (isHighCardinality(table.get(c))) {
+				table.set(c, toGenericColumn(table.get(c)));
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		if (window >= 0 && table.getRowCount() > window) {
+			table.removeRows(0, table.getRowCount() - window);
+		}
+	}
+
+	// -- Helper methods --
+
+	private static Column<?> createColumn(final String header,
+		final Class<?> type)
+	{
+		if (type == double.class || type == Double.class) {
+			return new DoubleColumn(header);
+		}
+		if (type == float.class || type == Float.class) {
+			return new FloatColumn(header);
+		}
+		if (type == long.class || type == Long.class) {
+			return new LongColumn(header);
+		}
+		if (type == int.class || type == Integer.class) {
+			return new IntColumn(header);
+		}
+		if (type == short.class || type == Short.class) {
+			return new ShortColumn(header);
+		}
+		if (type == byte.class || type == Byte.class) {
+			return new ByteColumn(header);
+		}
+		if (type == boolean.class || type == Boolean.class) {
+			return new BoolColumn(header);
+		}
+		if (type == String.class) {
+			return new DictionaryColumn(header);
+		}
+		return new GenericColumn(header);
+	}
+
+	private static boolean isHighCardinality(final Column<?> column) {
+		if (!(column instanceof DictionaryColumn)) return false;
+		final int distinct = ((DictionaryColumn) column).distinctValues();
+		return distinct > MAX_DICTIONARY_SIZE && distinct > column.size() / 2;
+	}
+
+	/**
+	 * Checks whether a value can be stored in a column without losing it, i.e.
+	 * whether integer and boolean columns get a value of their kind.
+	 */
+	private static boolean fits(final Column<?> column, final Object value) {
+		if (column instanceof LongColumn || column instanceof IntColumn ||
+			column instanceof ShortColumn || column instanceof ByteColumn)
+		{
+			return value instanceof Number;
+		}
+		if (column instanceof BoolColumn) return value instanceof Boolean;
+		return true;
+	}
+
+	private static GenericColumn toGenericColumn(final Column<?> column) {
+		final GenericColumn generic = new GenericColumn(column.getHeader());
+		generic.addAll(column);
+		return generic;
+	}
+
+	/**
+	 * Sets a value without boxing for primitive columns. Missing values are
+	 * stored as {@code NaN} in floating point columns; other primitive columns
+	 * must {@link #fits fit} the value.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void set(final Column<?> column, final int row,
+		final Object value)
+	{
+		if (column instanceof DoubleColumn) {
+			((DoubleColumn) column).setValue(row, value instanceof Number
+				? ((Number) value).doubleValue() : Double.NaN);
+		}
+		else if (column instanceof FloatColumn) {
+			((FloatColumn) column).setValue(row, value instanceof Number
+				? ((Number) value).floatValue() : Float.NaN);
+		}
+		else if (column instanceof LongColumn) {
+			((LongColumn) column).setValue(row, ((Number) value).longValue());
+		}
+		else if (column instanceof IntColumn) {
+			((IntColumn) column).setValue(row, ((Number) value).intValue());
+		}
+		else if (column instanceof ShortColumn) {
+			((ShortColumn) column).setValue(row, ((Number) value).shortValue());
+		}
+		else if (column instanceof ByteColumn) {
+			((ByteColumn) column).setValue(row, ((Number) value).byteValue());
+		}
+		else if (column instanceof BoolColumn) {
+			((BoolColumn) column).setValue(row, (Boolean) value);
+		}
+		else if (column instanceof DictionaryColumn) {
+			((DictionaryColumn) column).set(row, value == null ? null : value
+				.toString());
+		}
+		else {
+			((Column<Object>) column).set(row, value);
+		}
+	}
+}
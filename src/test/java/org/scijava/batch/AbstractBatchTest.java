@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.Context;
+import org.scijava.command.CommandInfo;
+import org.scijava.command.CommandService;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleService;
+import org.scijava.script.ScriptInfo;
+import org.scijava.service.SciJavaService;
+import org.scijava.table.Table;
+
+/**
+ * Shared fixture of the batch processing tests: a context, a temporary folder
+ * and helpers to run a script over a batch of files.
+ *
+ * @author agent
+ */
+public abstract class AbstractBatchTest {
+
+	/** Script that returns its input file */
+	protected static final String ECHO_SCRIPT = "" //
+			+ "#@ File input\n" //
+			+ "#@output result\n" //
+			+ "" //
+			+ "result = input";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	protected Context context;
+
+	@Before
+	public void initialize() {
+		context = new Context(SciJavaService.class);
+	}
+
+	@After
+	public void disposeContext() {
+		if (context != null) {
+			context.dispose();
+			context = null;
+		}
+	}
+
+	protected ScriptInfo createInfo(String script) {
+		StringReader scriptReader = new StringReader(script);
+		return new ScriptInfo(context, "Foo.groovy", scriptReader);
+	}
+
+	/** Files named file0.txt, file1.txt, ... that don't need to exist */
+	protected static File[] testFiles(int count) {
+		File[] files = new File[count];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new File("file" + i + ".txt");
+		}
+		return files;
+	}
+
+	/**
+	 * Inputs of a {@link ModuleBatchProcessor} that runs the given script over
+	 * the given files, which are passed to its "input".
+	 */
+	protected HashMap<String, Object> batchInputs(String script, File... files) {
+		HashMap<String, Object> inputMap = new HashMap<>();
+		inputMap.put("moduleInfo", createInfo(script));
+		inputMap.put("inputChoice", "input");
+		inputMap.put("inputFileList", files);
+		return inputMap;
+	}
+
+	/** Run a {@link ModuleBatchProcessor} and return its result table. */
+	protected Table<?, ?> runBatch(Map<String, Object> inputMap) {
+		return (Table<?, ?>) runBatchModule(inputMap).getOutput("outputTable");
+	}
+
+	protected Module runBatchModule(Map<String, Object> inputMap) {
+		ModuleService moduleService = context.getService(ModuleService.class);
+		CommandService commandService = context
+				.getService(CommandService.class);
+		CommandInfo commandInfo = commandService
+				.getCommand(ModuleBatchProcessor.class);
+		Module module = moduleService.createModule(commandInfo);
+		try {
+			module = moduleService.run(module, true, inputMap).get();
+		} catch (InterruptedException | ExecutionException exc) {
+			exc.printStackTrace();
+		}
+		return module;
+	}
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link AdmissionController} and admission controlled batch runs.
+ *
+ * @author agent
+ */
+public class AdmissionControllerTest extends AbstractBatchTest {
+
+	@Test
+	public void testAdmissionController() {
+		long maxHeap = Runtime.getRuntime().maxMemory();
+		AdmissionController admission = new AdmissionController(maxHeap, 1.0, 1);
+		long huge = maxHeap;
+		long first = admission.tryAdmit(huge);
+		assertTrue("First item not admitted", first >= 0);
+		assertEquals("Item admitted beyond heap limit", -1, admission.tryAdmit(
+			huge));
+		admission.release(first, huge);
+		long again = admission.tryAdmit(huge);
+		assertTrue("Item not admitted after release", again >= 0);
+		assertEquals("Wrong number of items in flight", 1, admission
+			.getInFlight());
+		admission.release(again, huge);
+	}
+
+	@Test
+	public void testAdmissionControlledBatch() {
+		File[] files = testFiles(20);
+		HashMap<String, Object> inputMap = batchInputs(ECHO_SCRIPT, files);
+		inputMap.put("workers", 4);
+		inputMap.put("heapFraction", 0.9);
+		Table<?, ?> outputs = runBatch(inputMap);
+		assertEquals("Wrong number of output rows", files.length, outputs
+			.getRowCount());
+	}
+}
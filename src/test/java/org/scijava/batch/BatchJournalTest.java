@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link BatchJournal} and resumed batch runs.
+ *
+ * @author agent
+ */
+public class BatchJournalTest extends AbstractBatchTest {
+
+	@Test
+	public void testJournalSkipsUnsupportedOutputs() throws IOException {
+		File journalFile = folder.newFile("skipped.journal");
+		File input = folder.newFile("input.txt");
+		Map<String, Object> outputs = new HashMap<>();
+		outputs.put("count", 3);
+		outputs.put("list", new ArrayList<>(Arrays.asList("a", "b")));
+		try (BatchJournal journal = new BatchJournal(journalFile, "hash", false)) {
+			journal.record(input, outputs);
+		}
+		try (BatchJournal journal = new BatchJournal(journalFile, "hash", true)) {
+			Map<String, Object> replayed = journal.lookup(input);
+			assertNotNull("Record not replayed", replayed);
+			assertEquals("Wrong scalar output", 3, replayed.get("count"));
+			assertTrue("Unsupported output not skipped", replayed.containsKey(
+				"list") && replayed.get("list") == null);
+		}
+	}
+
+	@Test
+	public void testResumeFromJournal() throws IOException {
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "result = UUID.randomUUID().toString()";
+		File journalFile = folder.newFile("batch.journal");
+		File[] files = { new File("foo.txt"), new File("bar.txt") };
+
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		inputMap.put("journalFile", journalFile);
+		inputMap.put("resume", false);
+		Table<?, ?> first = runBatch(inputMap);
+
+		inputMap.put("inputFileList", new File[] { files[0], files[1],
+			new File("quo.txt") });
+		inputMap.put("resume", true);
+		Table<?, ?> resumed = runBatch(inputMap);
+
+		assertEquals("Wrong number of output rows", 3, resumed.getRowCount());
+		assertEquals("Journaled result not reused", first.get(0, 0), resumed.get(0, 0));
+		assertEquals("Journaled result not reused", first.get(0, 1), resumed.get(0, 1));
+		assertNotNull("Missing result for new file", resumed.get(0, 2));
+	}
+}
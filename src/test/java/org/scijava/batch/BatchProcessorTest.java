@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the command-line {@link BatchProcessor}, with its minimal context of
+ * {@link BatchProcessor#SERVICES}.
+ *
+ * @author agent
+ */
+public class BatchProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testHeadlessBatchProcessor() throws IOException {
+		File scriptFile = folder.newFile("Batch_Script.groovy");
+		Files.write(scriptFile.toPath(), ("" //
+			+ "#@ File input\n" //
+			+ "#@ String suffix\n" //
+			+ "#@output result\n" //
+			+ "" //
+			+ "result = input.getName() + suffix").getBytes(
+				StandardCharsets.UTF_8));
+		File inputFolder = folder.newFolder("input");
+		for (String name : new String[] { "a.txt", "b.txt", "c.dat" }) {
+			new File(inputFolder, name).createNewFile();
+		}
+		File resultFile = new File(folder.getRoot(), "results.csv");
+
+		int exitCode = BatchProcessor.run("--script", scriptFile.getPath(),
+			"--input", inputFolder.getPath(), "--pattern", "*.txt", "--workers",
+			"2", "--output", resultFile.getPath(), "--param", "suffix=!");
+		assertEquals("Wrong exit code", BatchProcessor.EXIT_OK, exitCode);
+		List<String> lines = Files.readAllLines(resultFile.toPath(),
+			StandardCharsets.UTF_8);
+		assertEquals("Wrong number of result lines", 3, lines.size());
+		assertTrue("Missing result", lines.contains("a.txt,a.txt!"));
+		assertTrue("Missing result", lines.contains("b.txt,b.txt!"));
+
+		assertEquals("Wrong exit code", BatchProcessor.EXIT_SETUP, BatchProcessor
+			.run("--script", "missing.groovy", "a.txt"));
+	}
+
+	@Test
+	public void testInvalidArguments() {
+		PrintStream err = System.err;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(bytes, true));
+		try {
+			assertEquals("Wrong exit code", BatchProcessor.EXIT_USAGE,
+				BatchProcessor.run("--script", "script.groovy", "--workers", "0",
+					"a.txt"));
+			bytes.reset();
+			// no --input, --files or files
+			assertEquals("Wrong exit code", BatchProcessor.EXIT_USAGE,
+				BatchProcessor.run("--script", "script.groovy"));
+		}
+		finally {
+			System.setErr(err);
+		}
+		String output = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue("Missing error", output.contains("No input files given"));
+		assertTrue("Missing usage", output.contains("Usage: BatchProcessor"));
+	}
+}
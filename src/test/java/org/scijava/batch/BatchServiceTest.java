@@ -29,46 +29,34 @@
 package org.scijava.batch;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.StringReader;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
-import org.junit.After;
-import org.junit.Before;
 import org.junit.Test;
-import org.scijava.Context;
 import org.scijava.command.CommandInfo;
 import org.scijava.command.CommandService;
 import org.scijava.convert.ConvertService;
+import org.scijava.event.EventService;
+import org.scijava.module.DefaultMutableModuleInfo;
+import org.scijava.module.DefaultMutableModuleItem;
 import org.scijava.module.Module;
 import org.scijava.module.ModuleItem;
 import org.scijava.module.ModuleService;
 import org.scijava.script.ScriptInfo;
-import org.scijava.service.SciJavaService;
+import org.scijava.script.ScriptService;
 import org.scijava.table.Table;
 
-public class BatchServiceTest {
-
-	private Context context;
-
-	@Before
-	public void initialize() {
-		context = new Context(SciJavaService.class);
-	}
-
-	@After
-	public void disposeContext() {
-		if (context != null) {
-			context.dispose();
-			context = null;
-		}
-	}
+public class BatchServiceTest extends AbstractBatchTest {
 
 	@Test
 	public void testContext() {
@@ -108,6 +96,56 @@ public class BatchServiceTest {
 			.isEmpty());
 	}
 
+	@Test
+	public void testBatchableIndexUpdate() {
+		BatchService batchService = context.getService(BatchService.class);
+		ModuleService moduleService = context.getService(ModuleService.class);
+		DefaultMutableModuleInfo info = new DefaultMutableModuleInfo();
+		info.addInput(new DefaultMutableModuleItem<>(info, "stringInput",
+			String.class));
+		moduleService.addModule(info);
+		assertFalse("Module without file inputs is batchable", batchService
+			.supportsModule(info));
+
+		info.addInput(new DefaultMutableModuleItem<>(info, "fileInput",
+			File.class));
+		info.update(context.getService(EventService.class));
+		assertTrue("Updated module is not batchable", batchService.supportsModule(
+			info));
+		assertEquals("Wrong batchable input", "fileInput", batchService
+			.batchableInputs(info).get(0).getName());
+	}
+
+	@Test
+	public void testBatchableScripts() {
+		BatchService batchService = context.getService(BatchService.class);
+		ScriptService scriptService = context.getService(ScriptService.class);
+		ScriptInfo fileScript = new ScriptInfo(context, "FileScript.groovy",
+			new StringReader("#@ File input\n"));
+		ScriptInfo stringScript = new ScriptInfo(context, "StringScript.groovy",
+			new StringReader("#@ String input\n"));
+		scriptService.addScript(fileScript);
+		scriptService.addScript(stringScript);
+
+		List<ScriptInfo> found = new ArrayList<>();
+		List<ScriptInfo> scripts = batchService.batchableScripts(script -> {
+			synchronized (found) {
+				found.add(script);
+			}
+		});
+		assertTrue("Batchable script not listed", scripts.contains(fileScript));
+		assertFalse("Non-batchable script listed", scripts.contains(stringScript));
+		assertTrue("Listener not notified", found.contains(fileScript));
+		assertSame("Scripts not cached", scripts, batchService.batchableScripts(
+			null));
+
+		ScriptInfo otherScript = new ScriptInfo(context, "OtherScript.groovy",
+			new StringReader("#@ File input\n"));
+		scriptService.addScript(otherScript);
+		assertTrue("Added script not listed", batchService.batchableScripts(null)
+			.contains(otherScript));
+	}
+
 	@Test
 	public void testFillFileInput() {
 		BatchService batchService = context.getService(BatchService.class);
@@ -189,11 +227,4 @@ public class BatchServiceTest {
 				outputs.getColumnHeader(0));
 		assertEquals("Wrong file name", "quo.txt", outputs.getRowHeader(2));
 	}
-
-	/* --- Helper methods --- */
-
-	private ScriptInfo createInfo(String script) {
-		StringReader scriptReader = new StringReader(script);
-		return new ScriptInfo(context, "Foo.groovy", scriptReader);
-	}
 }
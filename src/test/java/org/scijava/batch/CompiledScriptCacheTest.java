@@ -0,0 +1,198 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.Reader;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.junit.Test;
+import org.scijava.module.Module;
+import org.scijava.script.ScriptInfo;
+
+/**
+ * Tests {@link CompiledScriptCache} and {@link CachedScriptModule}.
+ *
+ * @author agent
+ */
+public class CompiledScriptCacheTest extends AbstractBatchTest {
+
+	@Test
+	public void testCachedScriptModule() {
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "result = input.getName()";
+		ScriptInfo scriptInfo = createInfo(script);
+		CompiledScriptCache cache = new CompiledScriptCache();
+		Module module = new CachedScriptModule(scriptInfo, cache);
+		context.inject(module);
+
+		for (String name : new String[] { "foo.txt", "bar.txt" }) {
+			module.setInput("input", new File(name));
+			module.run();
+			assertEquals("Wrong result", name, module.getOutput("result"));
+		}
+		assertEquals("Script not compiled exactly once", 1, cache.size());
+	}
+
+	@Test
+	public void testConcurrentSharedScript() throws InterruptedException,
+		ExecutionException
+	{
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "def name = input.getName()\n" //
+				+ "Thread.sleep(5)\n" //
+				+ "result = name";
+		ScriptInfo scriptInfo = createInfo(script);
+		CompiledScriptCache cache = new CompiledScriptCache();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Object>> results = new ArrayList<>();
+			for (int i = 0; i < 40; i++) {
+				File file = new File("file" + i + ".txt");
+				results.add(executor.submit(() -> {
+					Module module = new CachedScriptModule(scriptInfo, cache);
+					context.inject(module);
+					module.setInput("input", file);
+					module.run();
+					return module.getOutput("result");
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals("Result of another module", "file" + i + ".txt", results
+					.get(i).get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertEquals("Compiled script not shared", 1, cache.size());
+	}
+
+	@Test
+	public void testThreadingParameter() throws ScriptException {
+		for (String threading : new String[] { "MULTITHREADED", "THREAD-ISOLATED",
+			"STATELESS" })
+		{
+			CompiledScriptCache cache = new CompiledScriptCache();
+			assertSame("Script not shared for " + threading, cache.compile("a.txt",
+				"test", "source", new ThreadingEngine(threading)), cache.compile(
+					"a.txt", "test", "source", new ThreadingEngine(threading)));
+		}
+		for (String threading : new String[] { null, "UNKNOWN" }) {
+			CompiledScriptCache cache = new CompiledScriptCache();
+			assertNotSame("Script shared for " + threading, cache.compile("a.txt",
+				"test", "source", new ThreadingEngine(threading)), cache.compile(
+					"a.txt", "test", "source", new ThreadingEngine(threading)));
+			assertEquals("Script shared for " + threading, 0, cache.size());
+		}
+	}
+
+	/** Compiling engine with the given {@code THREADING} parameter */
+	private static class ThreadingEngine extends AbstractScriptEngine implements
+		Compilable
+	{
+
+		private final String threading;
+
+		private ThreadingEngine(String threading) {
+			this.threading = threading;
+		}
+
+		@Override
+		public CompiledScript compile(String script) {
+			return new CompiledScript() {
+
+				@Override
+				public Object eval(ScriptContext context) {
+					return script;
+				}
+
+				@Override
+				public ScriptEngine getEngine() {
+					return ThreadingEngine.this;
+				}
+			};
+		}
+
+		@Override
+		public CompiledScript compile(Reader script) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Object eval(String script, ScriptContext context) {
+			return script;
+		}
+
+		@Override
+		public Object eval(Reader reader, ScriptContext context) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Bindings createBindings() {
+			return new SimpleBindings();
+		}
+
+		@Override
+		public ScriptEngineFactory getFactory() {
+			// NB: only the THREADING parameter is needed
+			return (ScriptEngineFactory) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { ScriptEngineFactory.class }, (
+					proxy, method, args) -> "getParameter".equals(method.getName()) &&
+						"THREADING".equals(args[0]) ? threading : null);
+		}
+	}
+}
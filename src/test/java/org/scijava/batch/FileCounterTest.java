@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Tests {@link FileCounter}.
+ *
+ * @author agent
+ */
+public class FileCounterTest extends AbstractBatchTest {
+
+	@Test
+	public void testFileCounter() throws IOException, InterruptedException {
+		File root = folder.newFolder("count");
+		for (int i = 0; i < 10; i++) {
+			assertTrue(new File(root, "a" + i + ".tif").createNewFile());
+			assertTrue(new File(root, "b" + i + ".txt").createNewFile());
+		}
+		FileCounter counter = new FileCounter(context.service(
+			ThreadService.class));
+		assertEquals("Found 10 files.", awaitCount(counter, root, "*.tif"));
+
+		// pattern changes re-filter the cached listing
+		assertTrue(new File(root, "c.tif").createNewFile());
+		assertEquals("Found 20 files.", awaitCount(counter, root, "*.t?t"));
+		assertEquals("Found 10 files.", awaitCount(counter, root, "*.tif"));
+		assertEquals("Syntax error in pattern.", counter.update(root, false,
+			FileFinder.REGEX, "a(["));
+		counter.close();
+	}
+
+	@Test
+	public void testFileCounterReportsLateCount() throws IOException,
+		InterruptedException
+	{
+		File root = folder.newFolder("late");
+		for (int i = 0; i < 10; i++) {
+			assertTrue(new File(root, "a" + i + ".tif").createNewFile());
+		}
+		FileCounter counter = new FileCounter(context.service(
+			ThreadService.class));
+		BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+		String message = counter.update(root, false, FileFinder.WILDCARD, "*.tif",
+			messages::add);
+		if (message.startsWith("Counting")) {
+			// the count is passed on once it is known
+			message = messages.poll(10, TimeUnit.SECONDS);
+		}
+		assertEquals("Found 10 files.", message);
+		counter.close();
+	}
+
+	private static String awaitCount(FileCounter counter, File root,
+		String pattern) throws InterruptedException
+	{
+		String message = counter.update(root, false, FileFinder.WILDCARD,
+			pattern);
+		while (message.startsWith("Counting")) {
+			Thread.sleep(FileCounter.WAIT_MS);
+			message = counter.update(root, false, FileFinder.WILDCARD, pattern);
+		}
+		return message;
+	}
+}
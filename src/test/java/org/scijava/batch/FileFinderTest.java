@@ -0,0 +1,147 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.scijava.log.LogService;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link FileFinder}.
+ *
+ * @author agent
+ */
+public class FileFinderTest extends AbstractBatchTest {
+
+	@Test
+	public void testStreamingFileSource() throws IOException {
+		File root = folder.newFolder("input");
+		File sub = new File(root, "sub");
+		assertTrue(sub.mkdir());
+		for (int i = 0; i < 10; i++) {
+			assertTrue(new File(root, "a" + i + ".txt").createNewFile());
+			assertTrue(new File(sub, "b" + i + ".txt").createNewFile());
+		}
+		assertTrue(new File(root, "ignored.csv").createNewFile());
+
+		FileFinder finder = new FileFinder(root, FileFinder.createFilter(
+			FileFinder.WILDCARD, "*.txt"), true);
+		assertEquals("Wrong file count", 20, finder.count());
+
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "result = input.getName()";
+		HashMap<String, Object> inputMap = batchInputs(script);
+		inputMap.put("inputSource", finder.stream(r -> new Thread(r).start(), 4, context
+			.getService(LogService.class)));
+		Table<?, ?> outputs = runBatch(inputMap);
+
+		assertEquals("Wrong number of output rows", 20, outputs.getRowCount());
+		// files in subfolders are listed first
+		assertTrue("Wrong row order", outputs.getRowHeader(0).startsWith("b"));
+	}
+
+	@Test
+	public void testParallelFileFinder() throws IOException {
+		File root = folder.newFolder("tree");
+		for (int d = 0; d < 8; d++) {
+			File sub = new File(root, "sub" + d);
+			File deep = new File(sub, "deep");
+			assertTrue(deep.mkdirs());
+			for (int i = 0; i < 5; i++) {
+				assertTrue(new File(deep, "img_" + i + ".tif").createNewFile());
+				assertTrue(new File(deep, "img_" + i + ".txt").createNewFile());
+			}
+		}
+		assertTrue(new File(root, "img_top.tif").createNewFile());
+
+		FileFinder regexFinder = new FileFinder(root, FileFinder.createFilter(
+			FileFinder.REGEX, "img_[0-9]+\\.tif"), true);
+		assertEquals("Wrong regex count", 40, regexFinder.count());
+		FileFinder flatFinder = new FileFinder(root, FileFinder.createFilter(
+			FileFinder.WILDCARD, "*.tif"), false);
+		assertEquals("Wrong non-recursive count", 1, flatFinder.count());
+
+		// the order of parallel walks is stable, with subfolders first
+		FileFinder finder = new FileFinder(root, FileFinder.createFilter(
+			FileFinder.WILDCARD, "*.tif"), true);
+		List<File> files = finder.list();
+		assertEquals("Wrong file count", 41, files.size());
+		assertEquals("Wrong file order", files, finder.list());
+		assertEquals("Top-level file not last", "img_top.tif", files.get(40)
+			.getName());
+	}
+
+	@Test
+	public void testFileFinderSkipsUnreadableFolders() throws IOException {
+		File root = folder.newFolder("unreadable");
+		int folders = FileFinder.LOOKAHEAD + 4;
+		for (int d = 0; d < folders; d++) {
+			File sub = new File(root, String.format("sub%02d", d));
+			assertTrue(sub.mkdir());
+			assertTrue(new File(sub, "img.tif").createNewFile());
+		}
+		File locked = new File(root, "sub03");
+		assumeTrue(locked.setReadable(false) && !locked.canRead());
+		try {
+			FileFinder finder = new FileFinder(root, FileFinder.createFilter(
+				FileFinder.WILDCARD, "*.tif"), true);
+			List<File> files = new ArrayList<>();
+			for (File file : finder.stream(r -> new Thread(r).start(), 4, context
+				.getService(LogService.class)))
+			{
+				files.add(file);
+			}
+			assertEquals("Wrong file count", folders - 1, files.size());
+			try {
+				finder.list();
+				fail("Unreadable folder not reported");
+			}
+			catch (IOException exc) {
+				// expected
+			}
+		}
+		finally {
+			locked.setReadable(true);
+		}
+	}
+}
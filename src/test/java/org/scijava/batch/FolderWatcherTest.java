@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.scijava.log.LogService;
+
+/**
+ * Tests watching folders with {@link FolderWatcher}.
+ *
+ * @author agent
+ */
+public class FolderWatcherTest extends AbstractBatchTest {
+
+	@Test
+	public void testWatchedFolder() throws IOException, InterruptedException {
+		File root = folder.newFolder("watched");
+		assertTrue(new File(root, "a.txt").createNewFile());
+		assertTrue(new File(root, "ignored.csv").createNewFile());
+		FileFinder finder = new FileFinder(root, FileFinder.createFilter(
+			FileFinder.WILDCARD, "*.txt"), false);
+		FileSource source = finder.watch(r -> new Thread(r).start(), 4, 100, 1000,
+			context.getService(LogService.class));
+
+		List<String> names = new ArrayList<>();
+		for (File file : source) {
+			names.add(file.getName());
+			if (names.size() == 1) {
+				// written while the folder is being watched
+				Files.write(new File(root, "b.txt").toPath(), new byte[16]);
+			}
+		}
+		assertEquals("Wrong files", 2, names.size());
+		assertEquals("Wrong first file", "a.txt", names.get(0));
+		assertEquals("Wrong new file", "b.txt", names.get(1));
+		assertTrue("Source not complete", source.isComplete());
+	}
+
+	@Test(timeout = 10000)
+	public void testClosedWatchSourceEndsIteration() throws IOException {
+		File root = folder.newFolder("closed");
+		assertTrue(new File(root, "a.txt").createNewFile());
+		FileFinder finder = new FileFinder(root, FileFinder.createFilter(
+			FileFinder.WILDCARD, "*.txt"), false);
+		// watch without idle timeout, until the source is closed
+		FileSource source = finder.watch(r -> new Thread(r).start(), 4, 100, 0,
+			context.getService(LogService.class));
+		List<String> names = new ArrayList<>();
+		for (File file : source) {
+			names.add(file.getName());
+			source.close();
+		}
+		assertEquals("Wrong files", Arrays.asList("a.txt"), names);
+	}
+
+	@Test(timeout = 30000)
+	public void testDeletedFilesAreForgotten() throws IOException {
+		File root = folder.newFolder("pruned");
+		int count = FolderWatcher.MIN_PRUNE_SIZE - 1;
+		for (int i = 0; i < count; i++) {
+			assertTrue(new File(root, "file" + i + ".txt").createNewFile());
+		}
+		FileFinder finder = new FileFinder(root, FileFinder.createFilter(
+			FileFinder.WILDCARD, "*.txt"), false);
+		FileSource source = finder.watch(r -> new Thread(r).start(), 2 * count,
+			50, 1000, context.getService(LogService.class));
+
+		List<File> files = new ArrayList<>();
+		for (File file : source) {
+			files.add(file);
+			if (files.size() == count) {
+				// forgotten when the next file is delivered
+				assertTrue(files.get(0).delete());
+				assertTrue(new File(root, "last.txt").createNewFile());
+			}
+			else if (file.getName().equals("last.txt")) {
+				// recreated after it was forgotten
+				assertTrue(files.get(0).createNewFile());
+			}
+		}
+		assertEquals("Wrong number of files", count + 2, files.size());
+		assertEquals("Recreated file not delivered", files.get(0), files.get(
+			count + 1));
+	}
+}
@@ -0,0 +1,269 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.scijava.event.EventHandler;
+import org.scijava.event.EventService;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleInfo;
+import org.scijava.module.event.ModulePreprocessEvent;
+import org.scijava.module.process.AbstractPreprocessorPlugin;
+import org.scijava.module.process.PreprocessorPlugin;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginService;
+import org.scijava.table.Table;
+import org.scijava.widget.InputHarvester;
+
+/**
+ * Tests the execution modes of {@link ModuleBatchProcessor}.
+ *
+ * @author agent
+ */
+public class ModuleBatchProcessorTest extends AbstractBatchTest {
+
+	@Test
+	public void testParallelModuleBatchProcessor() {
+		File[] files = testFiles(50);
+		HashMap<String, Object> inputMap = batchInputs(ECHO_SCRIPT, files);
+		inputMap.put("workers", 4);
+		Table<?, ?> outputs = runBatch(inputMap);
+
+		assertEquals("Wrong number of output rows", files.length, outputs
+			.getRowCount());
+		for (int i = 0; i < files.length; i++) {
+			assertEquals("Wrong row order", files[i].getName(), outputs
+				.getRowHeader(i));
+			assertEquals("Wrong result", files[i], outputs.get(0, i));
+		}
+	}
+
+	@Test
+	public void testVirtualThreadModuleBatchProcessor() {
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "Thread.sleep(10)\n" //
+				+ "result = input";
+		File[] files = testFiles(100);
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		inputMap.put("workers", 50);
+		inputMap.put("virtualThreads", true);
+		Table<?, ?> outputs = runBatch(inputMap);
+
+		// NB: falls back to platform threads before Java 21
+		assertEquals("Wrong number of output rows", files.length, outputs
+			.getRowCount());
+		for (int i = 0; i < files.length; i++) {
+			assertEquals("Wrong result", files[i], outputs.get(0, i));
+		}
+	}
+
+	@Test
+	public void testCanceledFileDoesNotCancelOthers() {
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "Thread.sleep(50)\n" //
+				+ "result = input";
+		File[] files = new File[20];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new File((i % 2 == 0 ? "file" : "cancel") + i + ".txt");
+		}
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		inputMap.put("workers", 2);
+		inputMap.put("virtualThreads", true);
+		Table<?, ?> outputs;
+		CancelingPreprocessor.enabled = true;
+		try {
+			outputs = runBatch(inputMap);
+		}
+		finally {
+			CancelingPreprocessor.enabled = false;
+		}
+
+		assertEquals("Wrong number of output rows", files.length, outputs
+			.getRowCount());
+		for (int i = 0; i < files.length; i += 2) {
+			assertEquals("File canceled with another one", files[i], outputs.get(0,
+				i));
+			assertNull("Canceled file has a result", outputs.get(0, i + 1));
+		}
+	}
+
+	/**
+	 * Cancels modules whose input file name starts with "cancel", while
+	 * {@link #enabled}, and keeps its canceled state for a while.
+	 */
+	@Plugin(type = PreprocessorPlugin.class)
+	public static class CancelingPreprocessor extends
+		AbstractPreprocessorPlugin
+	{
+
+		private static volatile boolean enabled;
+
+		@Override
+		public void process(Module module) {
+			if (!enabled) return;
+			for (Object value : module.getInputs().values()) {
+				if (value instanceof File && ((File) value).getName().startsWith(
+					"cancel"))
+				{
+					cancel("Canceled " + value);
+					try {
+						Thread.sleep(100);
+					}
+					catch (InterruptedException exc) {
+						Thread.currentThread().interrupt();
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTimeout() {
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "if (input.getName().startsWith(\"slow\")) Thread.sleep(60000)\n" //
+				+ "result = input";
+		File[] files = { new File("a.txt"), new File("slow.txt"), new File(
+			"b.txt"), new File("c.txt") };
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		inputMap.put("workers", 2);
+		inputMap.put("timeout", 1);
+		long start = System.currentTimeMillis();
+		Table<?, ?> outputs = runBatch(inputMap);
+
+		assertTrue("Batch waited for hung file", System.currentTimeMillis() -
+			start < 30000);
+		assertEquals("Wrong number of output rows", files.length, outputs
+			.getRowCount());
+		assertEquals("Wrong status column", ModuleBatchProcessor.STATUS_COLUMN,
+			outputs.getColumnHeader(1));
+		assertEquals("Wrong status", ModuleBatchProcessor.STATUS_OK, outputs.get(1,
+			0));
+		assertEquals("Wrong status", ModuleBatchProcessor.STATUS_TIMED_OUT, outputs
+			.get(1, 1));
+		assertNull("Result of timed out file", outputs.get(0, 1));
+		assertEquals("Wrong result", files[3], outputs.get(0, 3));
+	}
+
+	@Test
+	public void testChunkedModuleBatchProcessor() {
+		String script = "" //
+				+ "#@ File[] inputs\n" //
+				+ "#@output String[] names\n" //
+				+ "#@output Integer chunk\n" //
+				+ "" //
+				+ "names = inputs.collect { it.getName() } as String[]\n" //
+				+ "chunk = inputs.length";
+		File[] files = testFiles(7);
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		BatchService batchService = context.getService(BatchService.class);
+		assertEquals("File array input not batchable", 1, batchService
+			.batchableInputs((ModuleInfo) inputMap.get("moduleInfo")).size());
+		inputMap.put("inputChoice", "inputs");
+		inputMap.put("chunkSize", 3);
+		inputMap.put("workers", 2);
+		Table<?, ?> outputs = runBatch(inputMap);
+
+		assertEquals("Wrong number of output rows", files.length, outputs
+			.getRowCount());
+		int names = outputs.getColumnIndex("names");
+		int chunk = outputs.getColumnIndex("chunk");
+		for (int i = 0; i < files.length; i++) {
+			assertEquals("Wrong row header", files[i].getName(), outputs
+				.getRowHeader(i));
+			assertEquals("Wrong split output", files[i].getName(), outputs.get(
+				names, i));
+		}
+		assertEquals("Wrong chunk size", 3, outputs.get(chunk, 0));
+		assertEquals("Wrong last chunk size", 1, outputs.get(chunk, 6));
+	}
+
+	@Test
+	public void testFastPath() {
+		File[] files = testFiles(10);
+		HashMap<String, Object> inputMap = batchInputs(ECHO_SCRIPT, files);
+		inputMap.put("workers", 1);
+
+		PreprocessCounter counter = new PreprocessCounter((ModuleInfo) inputMap
+			.get("moduleInfo"));
+		context.getService(EventService.class).subscribe(counter);
+		runBatch(inputMap);
+		int fullChain = counter.count.getAndSet(0);
+
+		inputMap.put("fastPath", true);
+		Table<?, ?> outputs = runBatch(inputMap);
+		assertEquals("Wrong number of output rows", files.length, outputs
+			.getRowCount());
+		for (int i = 0; i < files.length; i++) {
+			assertEquals("Wrong result", files[i], outputs.get(0, i));
+		}
+		// the full chain runs for the first file only, then only the
+		// preprocessors that run before input harvesting
+		int perFile = fullChain / files.length;
+		long fastCount = context.getService(PluginService.class)
+			.getPluginsOfType(PreprocessorPlugin.class).stream().filter(
+				info -> info.getPriority() > InputHarvester.PRIORITY).count();
+		assertTrue("Preprocessors not skipped", fastCount < perFile);
+		assertEquals("Wrong preprocessors on the fast path", perFile +
+			(files.length - 1) * fastCount, counter.count.get());
+	}
+
+	/** Counts preprocessing steps of modules of a given info */
+	public static class PreprocessCounter {
+
+		private final ModuleInfo info;
+		private final AtomicInteger count = new AtomicInteger();
+
+		public PreprocessCounter(ModuleInfo info) {
+			this.info = info;
+		}
+
+		@EventHandler
+		public void onEvent(ModulePreprocessEvent event) {
+			if (event.getModule().getInfo() == info) count.incrementAndGet();
+		}
+	}
+}
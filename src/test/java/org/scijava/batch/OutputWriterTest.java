@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.scijava.io.IOService;
+import org.scijava.log.LogService;
+import org.scijava.table.DefaultGenericTable;
+
+/**
+ * Tests {@link OutputWriter}.
+ *
+ * @author agent
+ */
+public class OutputWriterTest extends AbstractBatchTest {
+
+	@Test
+	public void testOutputWriter() throws IOException, InterruptedException {
+		File outputFolder = folder.newFolder("outputs");
+		OutputWriter writer = new OutputWriter(context.service(IOService.class),
+			context.service(LogService.class), outputFolder,
+			"{name}_{output}_{index}.csv", 4, 1);
+		Map<String, Object> outputs = new HashMap<>();
+		Object unsaveable = new Object();
+		outputs.put("table", new DefaultGenericTable(2, 2));
+		outputs.put("other", unsaveable);
+		outputs.put("count", 5);
+		outputs.put("label", "foo");
+		Map<String, Object> written = writer.write(new File("in/cells.tif"), 3,
+			outputs);
+		// the same file name for another input must not overwrite the first
+		Map<String, Object> again = writer.write(new File("other/cells.tif"), 3,
+			outputs);
+		writer.close();
+
+		File target = new File(outputFolder, "cells_table_3.csv");
+		assertEquals("Wrong output path", target.getPath(), written.get("table"));
+		assertTrue("Output not saved", target.exists());
+		assertSame("Unsaveable output changed", unsaveable, written.get("other"));
+		assertEquals("Scalar output changed", 5, written.get("count"));
+		assertEquals("Text output changed", "foo", written.get("label"));
+		assertSame("Colliding output saved", outputs.get("table"), again.get(
+			"table"));
+		assertEquals("Collision not counted", 1, writer.getFailed());
+		assertTrue(OutputWriter.DEFAULT_PATTERN.contains("{index}"));
+		assertTrue(OutputWriter.isScalar(double[].class));
+		assertFalse(OutputWriter.isScalar(Object.class));
+	}
+}
@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.scijava.batch.metrics.BatchMetrics;
+
+/**
+ * Tests {@link Prefetcher}.
+ *
+ * @author agent
+ */
+public class PrefetcherTest extends AbstractBatchTest {
+
+	@Test
+	public void testPrefetcher() throws IOException {
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			File file = folder.newFile("file" + i + ".dat");
+			Files.write(file.toPath(), new byte[1000 * i]);
+			files.add(file);
+		}
+		BatchMetrics metrics = new BatchMetrics("prefetch");
+		List<File> taken = new ArrayList<>();
+		try (Prefetcher prefetcher = new Prefetcher(files.iterator(), 4, 10000,
+			metrics))
+		{
+			while (prefetcher.hasNext()) {
+				taken.add(prefetcher.next());
+			}
+		}
+		assertEquals("Wrong files or order", files, taken);
+		assertEquals("Wrong number of prefetched files", files.size(), metrics
+			.getPrefetchHits() + metrics.getPrefetchMisses());
+		assertEquals("Unexpected prefetch failures", 0, metrics
+			.getPrefetchFailures());
+	}
+
+	@Test
+	public void testPrefetcherCountsUnreadableFiles() throws IOException,
+		InterruptedException
+	{
+		File missing = new File(folder.getRoot(), "missing.dat");
+		BatchMetrics metrics = new BatchMetrics("prefetch");
+		try (Prefetcher prefetcher = new Prefetcher(Arrays.asList(missing)
+			.iterator(), 1, 10000, metrics))
+		{
+			Thread.sleep(200);
+			assertEquals("Wrong file", missing, prefetcher.next());
+			assertFalse(prefetcher.hasNext());
+		}
+		assertEquals("Unreadable file counted as hit", 0, metrics
+			.getPrefetchHits());
+		assertEquals("Unreadable file not counted as failure", 1, metrics
+			.getPrefetchFailures() + metrics.getPrefetchMisses());
+	}
+}
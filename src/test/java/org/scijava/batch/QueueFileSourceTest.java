@@ -0,0 +1,97 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link QueueFileSource}.
+ *
+ * @author agent
+ */
+public class QueueFileSourceTest {
+
+	@Test
+	public void testFullQueueFileSource() {
+		// the producer fills the queue completely before finishing
+		QueueFileSource source = new QueueFileSource(4, Runnable::run, queue -> {
+			try {
+				for (int i = 0; i < 4; i++) {
+					queue.put(new File("file" + i));
+				}
+			}
+			catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+			queue.finish();
+		});
+		List<File> files = new ArrayList<>();
+		source.forEach(files::add);
+		assertEquals("Queued files lost", 4, files.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testClosedSourceDeliversQueuedFiles()
+		throws InterruptedException
+	{
+		// the producer never finishes, and blocks once the queue is full
+		AtomicBoolean stopped = new AtomicBoolean();
+		QueueFileSource source = new QueueFileSource(3, r -> new Thread(r)
+			.start(), queue -> {
+				try {
+					for (int i = 0; !stopped.get(); i++) {
+						stopped.set(!queue.put(new File("file" + i)));
+					}
+				}
+				catch (InterruptedException exc) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		Iterator<File> iterator = source.iterator();
+		while (source.size() < 3) {
+			Thread.sleep(10);
+		}
+		source.close();
+		List<File> files = new ArrayList<>();
+		iterator.forEachRemaining(files::add);
+		assertEquals("Discovered files not delivered", 3, files.size());
+		assertEquals("Wrong number of discovered files", 3, source.size());
+		while (!stopped.get()) {
+			Thread.sleep(10);
+		}
+	}
+}
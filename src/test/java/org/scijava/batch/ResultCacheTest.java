@@ -0,0 +1,165 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link ResultCache} and cached batch runs.
+ *
+ * @author agent
+ */
+public class ResultCacheTest extends AbstractBatchTest {
+
+	/** Appends to the counter file on each run */
+	private static final String COUNTING_SCRIPT = "" //
+			+ "#@ File input\n" //
+			+ "#@ Integer factor\n" //
+			+ "#@ File counter\n" //
+			+ "#@output Long size\n" //
+			+ "" //
+			+ "synchronized (counter.getPath().intern()) { counter << 'x' }\n" //
+			+ "size = input.length() * factor";
+
+	@Test
+	public void testResultCache() throws IOException {
+		File counterFile = folder.newFile("runs.txt");
+		File[] files = dataFiles(5);
+		Map<String, Object> params = new HashMap<>();
+		params.put("factor", 2);
+		params.put("counter", counterFile);
+		HashMap<String, Object> inputMap = cachedBatchInputs(COUNTING_SCRIPT,
+			files, params);
+		runBatch(inputMap);
+		assertEquals("Wrong number of runs", files.length, counterFile.length());
+
+		// rerun with one changed file: only the changed file runs
+		Files.write(files[3].toPath(), new byte[10]);
+		Table<?, ?> outputs = runBatch(inputMap);
+		assertEquals("Wrong number of runs", files.length + 1, counterFile
+			.length());
+		for (int i = 0; i < files.length; i++) {
+			assertEquals("Wrong result", 2L * files[i].length(), outputs.get(0, i));
+		}
+
+		// other input values must not hit the cache
+		params.put("factor", 3);
+		outputs = runBatch(inputMap);
+		assertEquals("Wrong result", 3L * files[4].length(), outputs.get(0, 4));
+	}
+
+	@Test
+	public void testResultCacheHashesInputsBeforeRunning() throws IOException {
+		File counterFile = folder.newFile("runs.txt");
+		File[] files = dataFiles(5);
+		Map<String, Object> params = new HashMap<>();
+		params.put("factor", 2);
+		params.put("counter", counterFile);
+		// the script changes its input after using it
+		HashMap<String, Object> inputMap = cachedBatchInputs(COUNTING_SCRIPT +
+			"\nfactor = 0", files, params);
+		runBatch(inputMap);
+
+		params.put("factor", 0);
+		Table<?, ?> outputs = runBatch(inputMap);
+		assertEquals("Wrong number of runs", 2 * files.length, counterFile
+			.length());
+		assertEquals("Result of other input value", 0L, outputs.get(0, 4));
+	}
+
+	@Test
+	public void testResultCacheWithHarvestedInputs() throws IOException {
+		File counterFile = folder.newFile("runs.txt");
+		File[] files = dataFiles(5);
+		// the factor is not preset, its default value is harvested
+		Map<String, Object> params = new HashMap<>();
+		params.put("counter", counterFile);
+		HashMap<String, Object> inputMap = cachedBatchInputs(COUNTING_SCRIPT
+			.replace("Integer factor", "Integer (value=2) factor"), files, params);
+		runBatch(inputMap);
+		assertEquals("Wrong number of runs", files.length, counterFile.length());
+
+		// only the first file runs again, to harvest the inputs
+		Table<?, ?> outputs = runBatch(inputMap);
+		assertEquals("Wrong number of runs", files.length + 1, counterFile
+			.length());
+		for (int i = 0; i < files.length; i++) {
+			assertEquals("Wrong result", 2L * files[i].length(), outputs.get(0, i));
+		}
+	}
+
+	@Test
+	public void testResultCacheIndexIsBounded() throws IOException {
+		File cacheFolder = new File(folder.getRoot(), "cache");
+		try (ResultCache cache = new ResultCache(cacheFolder, 1 << 20, "script",
+			3))
+		{
+			for (int i = 0; i < 5; i++) {
+				File file = folder.newFile("file" + i + ".dat");
+				Files.write(file.toPath(), new byte[i]);
+				cache.key(file, "inputs");
+			}
+			assertEquals("Wrong number of indexed files", 3, cache.indexedFiles());
+		}
+		try (ResultCache cache = new ResultCache(cacheFolder, 1 << 20, "script",
+			2))
+		{
+			assertEquals("Wrong number of reloaded files", 2, cache.indexedFiles());
+		}
+	}
+
+	/** Files of 0, 1, 2, ... bytes */
+	private File[] dataFiles(int count) throws IOException {
+		File[] files = new File[count];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = folder.newFile("file" + i + ".dat");
+			Files.write(files[i].toPath(), new byte[i]);
+		}
+		return files;
+	}
+
+	private HashMap<String, Object> cachedBatchInputs(String script,
+		File[] files, Map<String, Object> params)
+	{
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		inputMap.put("moduleInputs", params);
+		inputMap.put("cacheFolder", new File(folder.getRoot(), "cache"));
+		inputMap.put("workers", 1);
+		return inputMap;
+	}
+}
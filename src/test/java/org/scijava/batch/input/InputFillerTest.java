@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.scijava.batch.AbstractBatchTest;
+import org.scijava.batch.BatchService;
+import org.scijava.module.Module;
+import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleService;
+import org.scijava.script.ScriptInfo;
+
+/**
+ * Tests {@link InputFiller}.
+ *
+ * @author agent
+ */
+public class InputFillerTest extends AbstractBatchTest {
+
+	@Test
+	public void testInputFiller() {
+		BatchService batchService = context.getService(BatchService.class);
+		ModuleService moduleService = context.getService(ModuleService.class);
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@ String name\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "result = input";
+		ScriptInfo scriptInfo = createInfo(script);
+		Module module = moduleService.createModule(scriptInfo);
+		ModuleItem<?> fileInput = scriptInfo.getInput("input");
+		InputFiller<File> filler = batchService.getInputFiller(fileInput, File.class);
+		assertNotNull("File input filler", filler);
+		assertNull("String input filler", batchService.getInputFiller(scriptInfo
+			.getInput("name"), File.class));
+		File fileObject = new File("foo.bar");
+		filler.fill(module, fileObject);
+		assertEquals("Filled input", fileObject, fileInput.getValue(module));
+	}
+}
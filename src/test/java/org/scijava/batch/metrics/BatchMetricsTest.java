@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.scijava.batch.AbstractBatchTest;
+import org.scijava.batch.ModuleBatchProcessor;
+import org.scijava.command.CommandModule;
+
+/**
+ * Tests {@link BatchMetrics} and {@link LatencyHistogram}.
+ *
+ * @author agent
+ */
+public class BatchMetricsTest extends AbstractBatchTest {
+
+	@Test
+	public void testBatchMetrics() {
+		File[] files = testFiles(20);
+		HashMap<String, Object> inputMap = batchInputs(ECHO_SCRIPT, files);
+		inputMap.put("workers", 2);
+
+		CommandModule module = (CommandModule) runBatchModule(inputMap);
+
+		BatchMetrics metrics = ((ModuleBatchProcessor<?>) module.getCommand())
+			.getMetrics();
+		assertEquals("Wrong total", files.length, metrics.getTotal());
+		assertEquals("Wrong completed count", files.length, metrics
+			.getCompleted());
+		assertEquals("Wrong failed count", 0, metrics.getFailed());
+		assertEquals("Wrong queue depth", 0, metrics.getQueueDepth());
+		assertEquals("Wrong latency count", files.length, metrics.getLatency()
+			.count());
+		assertTrue("Wrong latency percentiles", metrics.getLatencyP50() <= metrics
+			.getLatencyP99() && metrics.getLatencyP99() <= metrics.getLatencyMax());
+		assertNull("MBean not unregistered", metrics.getObjectName());
+	}
+
+	@Test
+	public void testLatencyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertEquals("Wrong count", 1000, histogram.count());
+		assertEquals("Wrong max", 1000000, histogram.max());
+		assertEquals("Wrong mean", 500500, histogram.mean(), 1e-6);
+		assertEquals("Wrong median", 500000, histogram.percentile(0.5), 35000);
+		assertEquals("Wrong 99th percentile", 990000, histogram.percentile(0.99),
+			70000);
+	}
+}
@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.scijava.batch.AbstractBatchTest;
+import org.scijava.table.Table;
+
+/**
+ * Tests writing batch results to {@link ResultSink}s.
+ *
+ * @author agent
+ */
+public class ResultSinkTest extends AbstractBatchTest {
+
+	@Test
+	public void testResultSinks() throws IOException {
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output Integer length\n" //
+				+ "#@output String name\n" //
+				+ "" //
+				+ "name = input.getName()\n" //
+				+ "length = name.length()";
+		File[] files = { new File("a.txt"), new File("bb.txt"), new File(
+			"c,c.txt") };
+		File csvFile = new File(folder.getRoot(), "results.csv");
+		File columnarFile = new File(folder.getRoot(), "results.bcol");
+
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		inputMap.put("resultFile", csvFile);
+		inputMap.put("tableRows", 0);
+		assertNull("Table should be disabled", runBatch(inputMap));
+
+		List<String> lines = Files.readAllLines(csvFile.toPath());
+		assertEquals("Wrong number of lines", 4, lines.size());
+		assertEquals("Wrong header", "File,length,name", lines.get(0));
+		assertEquals("Wrong row", "\"c,c.txt\",7,\"c,c.txt\"", lines.get(3));
+
+		inputMap.put("resultFile", columnarFile);
+		inputMap.put("tableRows", 2);
+		Table<?, ?> window = runBatch(inputMap);
+		assertEquals("Wrong window size", 2, window.getRowCount());
+		assertEquals("Wrong last row", "c,c.txt", window.getRowHeader(1));
+
+		Table<?, ?> columnar = ColumnarResultSink.read(columnarFile);
+		assertEquals("Wrong number of rows", 3, columnar.getRowCount());
+		assertEquals("Wrong value", 6, columnar.get(0, 1));
+		assertEquals("Wrong value", "bb.txt", columnar.get(1, 1));
+	}
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * A Batch Processor for SciJava Modules and Scripts
+ * %%
+ * Copyright (C) 2017 - 2022 Friedrich Miescher Institute for Biomedical Research, Basel (Switzerland)
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.scijava.batch.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.scijava.batch.AbstractBatchTest;
+import org.scijava.table.DoubleColumn;
+import org.scijava.table.GenericTable;
+import org.scijava.table.Table;
+
+/**
+ * Tests {@link TableResultSink}.
+ *
+ * @author agent
+ */
+public class TableResultSinkTest extends AbstractBatchTest {
+
+	@Test
+	public void testTypedResultColumns() {
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output Double size\n" //
+				+ "#@output String folder\n" //
+				+ "#@output result\n" //
+				+ "" //
+				+ "size = input.getName().length()\n" //
+				+ "folder = input.getParent()\n" //
+				+ "result = input";
+		File[] files = { new File("x/a.txt"), new File("x/bb.txt"), new File(
+			"y/c.txt") };
+
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		GenericTable outputs = (GenericTable) runBatch(inputMap);
+
+		assertTrue("Expected primitive column", outputs.get(0) instanceof DoubleColumn);
+		assertTrue("Expected dictionary column", outputs.get(1) instanceof DictionaryColumn);
+		assertEquals("Wrong number of distinct values", 2,
+			((DictionaryColumn) outputs.get(1)).distinctValues());
+		assertEquals("Wrong value", 6.0, outputs.get(0, 1));
+		assertEquals("Wrong value", "y", outputs.get(1, 2));
+		assertEquals("Wrong value", files[2], outputs.get(2, 2));
+	}
+
+	@Test
+	public void testMissingValuesInTypedColumns() {
+		TableResultSink sink = new TableResultSink(-1);
+		sink.open(Arrays.asList("count", "valid", "mean"), Arrays.asList(
+			Integer.class, Boolean.class, Double.class));
+		sink.append("row0", new Object[] { 3, true, 1.5 });
+		sink.append("row1", new Object[] { null, null, null });
+		sink.append("row2", new Object[] { 5, false, 2.5 });
+		sink.close();
+		Table<?, ?> table = sink.getTable();
+		assertEquals("Wrong value", 3, table.get(0, 0));
+		assertNull("Missing value reported", table.get(0, 1));
+		assertEquals("Wrong value", 5, table.get(0, 2));
+		assertEquals("Wrong value", true, table.get(1, 0));
+		assertNull("Missing value reported", table.get(1, 1));
+		assertTrue("Expected primitive column", table.get(2) instanceof DoubleColumn);
+		assertTrue("Expected NaN", Double.isNaN((Double) table.get(2, 1)));
+	}
+
+	@Test
+	public void testFailedFileInTypedColumn() {
+		String script = "" //
+				+ "#@ File input\n" //
+				+ "#@output Integer length\n" //
+				+ "" //
+				+ "if (input.getName().startsWith('bad')) throw new IllegalStateException('bad file')\n" //
+				+ "length = input.getName().length()";
+		File[] files = { new File("a.txt"), new File("bad.txt"), new File(
+			"ccc.txt") };
+
+		HashMap<String, Object> inputMap = batchInputs(script, files);
+		Table<?, ?> outputs = runBatch(inputMap);
+
+		assertEquals("Wrong value", 5, outputs.get(0, 0));
+		assertNull("Failed file reported a value", outputs.get(0, 1));
+		assertEquals("Wrong value", 7, outputs.get(0, 2));
+	}
+
+	@Test
+	public void testHighCardinalityStringColumn() {
+		TableResultSink sink = new TableResultSink(-1);
+		sink.open(Arrays.asList("path", "status"), Arrays.asList(String.class,
+			String.class));
+		int rows = 2 * TableResultSink.MAX_DICTIONARY_SIZE;
+		for (int i = 0; i < rows; i++) {
+			sink.append("row" + i, new Object[] { "/data/file" + i, "ok" });
+		}
+		sink.close();
+		Table<?, ?> table = sink.getTable();
+		assertFalse("Unique values kept in a dictionary", table.get(
+			0) instanceof DictionaryColumn);
+		assertTrue("Repeated values not in a dictionary", table.get(
+			1) instanceof DictionaryColumn);
+		assertEquals("Wrong value", "/data/file7", table.get(0, 7));
+		assertEquals("Wrong row count", rows, table.getRowCount());
+	}
+}